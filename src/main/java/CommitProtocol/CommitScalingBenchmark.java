@@ -0,0 +1,71 @@
+package CommitProtocol;
+
+import Common.LatencyHistogram;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.pattern.Patterns;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Commit latency and throughput of Coordinator as the number of participants per transaction
+// grows. Each transaction spans every participant; 1 participant takes the one-phase path.
+// With a reply latency each vote is delayed by an exponential draw of that mean, so a
+// transaction waits for the slowest of its participants.
+// Usage: CommitScalingBenchmark [participants, e.g. 1,2,10,100,1000] [seconds] [inFlight] [readOnlyRate] [noRate]
+//                               [reply latency ms]
+public class CommitScalingBenchmark {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    public static void main(String[] args) throws Exception {
+        String[] sizes = (args.length > 0 ? args[0] : "1,2,10,100,1000").split(",");
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int inFlight = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        double readOnlyRate = args.length > 3 ? Double.parseDouble(args[3]) : 0.0;
+        double noRate = args.length > 4 ? Double.parseDouble(args[4]) : 0.0;
+        Duration replyLatency = Duration.ofMillis(args.length > 5 ? Long.parseLong(args[5]) : 0);
+
+        System.out.printf("%d in flight, read-only votes %.0f%%, no votes %.0f%%, reply latency %d ms, %ds per size%n",
+                inFlight, readOnlyRate * 100, noRate * 100, replyLatency.toMillis(), seconds);
+        System.out.printf("%12s %12s %10s %10s %10s %10s %10s %10s%n", "participants", "txn/s",
+                "msg/txn", "read-only", "one-phase", "p50", "p99", "p999");
+        for (String size : sizes) {
+            run(Integer.parseInt(size), seconds, inFlight, readOnlyRate, noRate, replyLatency);
+        }
+    }
+
+    private static void run(int n, int seconds, int inFlight, double readOnlyRate, double noRate,
+                            Duration replyLatency) throws Exception {
+        // Delayed votes ride the scheduler, which needs a finer tick than its 10ms default
+        ActorSystem system = replyLatency.isZero() ? ActorSystem.create("CommitScaling")
+                : ActorSystem.create("CommitScaling", ConfigFactory.parseString("akka.scheduler.tick-duration = 1ms")
+                        .withFallback(ConfigFactory.load()));
+        try {
+            ActorRef[] participants = new ActorRef[n];
+            for (int i = 0; i < n; i++) {
+                participants[i] = system.actorOf(Participant.props(i, noRate, readOnlyRate, i, replyLatency), "participant" + i);
+            }
+            ActorRef coordinator = system.actorOf(Coordinator.props(), "coordinator");
+            coordinator.tell(new Coordinator.Setup(participants), ActorRef.noSender());
+            coordinator.tell(new Coordinator.Start(n, inFlight), ActorRef.noSender());
+
+            Thread.sleep(1000);
+            coordinator.tell(new Coordinator.ResetStats(), ActorRef.noSender());
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            Coordinator.Stats stats = (Coordinator.Stats) Patterns.ask(coordinator, new Coordinator.GetStats(), TIMEOUT)
+                    .toCompletableFuture().get();
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            long transactions = stats.getCommits() + stats.getAborts();
+            System.out.printf("%12d %,12.0f %10.1f %,10d %,10d %10s %10s %10s%n", n, transactions / elapsed,
+                    (double) stats.getMessages() / Math.max(1, transactions), stats.getReadOnly(), stats.getOnePhase(),
+                    LatencyHistogram.format(stats.getLatency().percentile(50)),
+                    LatencyHistogram.format(stats.getLatency().percentile(99)),
+                    LatencyHistogram.format(stats.getLatency().percentile(99.9)));
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+}
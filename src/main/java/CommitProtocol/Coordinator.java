@@ -0,0 +1,308 @@
+package CommitProtocol;
+
+import Common.LatencyHistogram;
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Two-phase commit over an arbitrary participant list (Node hard-wires two peers).
+// Per-transaction votes are bitsets over participant indexes, held in flat long[] rows, and
+// each phase sends one shared immutable message to every participant involved.
+// Fast paths: a single participant commits in one phase, read-only voters are left out of
+// phase two, and a transaction whose voters are all read-only has no phase two at all.
+public class Coordinator extends AbstractActor {
+    private ActorRef[] participants = new ActorRef[0];
+    private int words;
+    private final Random random = new Random();
+
+    // In-flight transactions: a transaction id encodes its slot (id & slotMask), so replies
+    // find their row without a lookup and stale ids are recognised by comparing ids[slot]
+    private int slotBits;
+    private int slotMask;
+    private long[] ids;
+    private long[] startNanos;
+    private int[] expected;
+    private int[] received;
+    private boolean[] aborted;
+    private long[] voted;        // row per slot: participants that have voted
+    private long[] prepared;     // row per slot: participants that voted YES and need phase two
+    private int[] freeSlots;
+    private int freeCount;
+    private long generation;
+
+    // Closed-loop load: keep `inFlight` transactions of `fanOut` participants running
+    private int fanOut;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private long commits;
+    private long aborts;
+    private long readOnly;
+    private long onePhase;
+    private long messages;
+
+    public static Props props() {
+        return Props.create(Coordinator.class);
+    }
+
+    // Messages
+    public static class Setup {
+        private final ActorRef[] participants;
+        public Setup(ActorRef[] participants) {
+            this.participants = participants;
+        }
+        public ActorRef[] getParticipants() {
+            return participants;
+        }
+    }
+
+    public static class Start {
+        private final int fanOut;
+        private final int inFlight;
+        public Start(int fanOut, int inFlight) {
+            this.fanOut = fanOut;
+            this.inFlight = inFlight;
+        }
+        public int getFanOut() {
+            return fanOut;
+        }
+        public int getInFlight() {
+            return inFlight;
+        }
+    }
+
+    public static class Prepare {
+        private final long transactionId;
+        public Prepare(long transactionId) {
+            this.transactionId = transactionId;
+        }
+        public long getTransactionId() {
+            return transactionId;
+        }
+    }
+
+    public static class CommitOnePhase {
+        private final long transactionId;
+        public CommitOnePhase(long transactionId) {
+            this.transactionId = transactionId;
+        }
+        public long getTransactionId() {
+            return transactionId;
+        }
+    }
+
+    public enum VoteKind { YES, NO, READ_ONLY }
+
+    public static class Vote {
+        private final long transactionId;
+        private final int participant;
+        private final VoteKind kind;
+        public Vote(long transactionId, int participant, VoteKind kind) {
+            this.transactionId = transactionId;
+            this.participant = participant;
+            this.kind = kind;
+        }
+        public long getTransactionId() {
+            return transactionId;
+        }
+        public int getParticipant() {
+            return participant;
+        }
+        public VoteKind getKind() {
+            return kind;
+        }
+    }
+
+    public static class ApplyResult {
+        private final long transactionId;
+        private final boolean result;
+        public ApplyResult(long transactionId, boolean result) {
+            this.transactionId = transactionId;
+            this.result = result;
+        }
+        public long getTransactionId() {
+            return transactionId;
+        }
+        public boolean isResult() {
+            return result;
+        }
+    }
+
+    public static class GetStats {}
+    public static class ResetStats {}
+
+    public static class Stats {
+        private final long commits;
+        private final long aborts;
+        private final long readOnly;
+        private final long onePhase;
+        private final long messages;
+        private final LatencyHistogram latency;
+        public Stats(long commits, long aborts, long readOnly, long onePhase, long messages, LatencyHistogram latency) {
+            this.commits = commits;
+            this.aborts = aborts;
+            this.readOnly = readOnly;
+            this.onePhase = onePhase;
+            this.messages = messages;
+            this.latency = latency;
+        }
+        public long getCommits() {
+            return commits;
+        }
+        public long getAborts() {
+            return aborts;
+        }
+        public long getReadOnly() {
+            return readOnly;
+        }
+        public long getOnePhase() {
+            return onePhase;
+        }
+        public long getMessages() {
+            return messages;
+        }
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Setup.class, this::handleSetup)
+                .match(Start.class, this::handleStart)
+                .match(Vote.class, this::handleVote)
+                .match(ApplyResult.class, this::handleOnePhaseOutcome)
+                .match(GetStats.class, msg -> getSender().tell(
+                        new Stats(commits, aborts, readOnly, onePhase, messages, latency), getSelf()))
+                .match(ResetStats.class, msg -> handleResetStats())
+                .build();
+    }
+
+    private void handleSetup(Setup msg) {
+        this.participants = msg.getParticipants();
+        this.words = (participants.length + 63) >>> 6;
+    }
+
+    private void handleStart(Start msg) {
+        if (msg.getFanOut() < 1 || msg.getFanOut() > participants.length) {
+            throw new IllegalArgumentException("fanOut must be in [1, " + participants.length + "]");
+        }
+        this.fanOut = msg.getFanOut();
+        int capacity = Integer.highestOneBit(Math.max(1, msg.getInFlight() - 1)) << 1;
+        slotBits = Integer.numberOfTrailingZeros(capacity);
+        slotMask = capacity - 1;
+        ids = new long[capacity];
+        startNanos = new long[capacity];
+        expected = new int[capacity];
+        received = new int[capacity];
+        aborted = new boolean[capacity];
+        voted = new long[capacity * words];
+        prepared = new long[capacity * words];
+        freeSlots = new int[capacity];
+        for (int slot = 0; slot < capacity; slot++) {
+            freeSlots[freeCount++] = slot;
+        }
+        for (int i = 0; i < msg.getInFlight(); i++) {
+            begin();
+        }
+    }
+
+    private void begin() {
+        int slot = freeSlots[--freeCount];
+        long id = (++generation << slotBits) | slot;
+        ids[slot] = id;
+        startNanos[slot] = System.nanoTime();
+        int first = random.nextInt(participants.length);
+
+        if (fanOut == 1) {
+            expected[slot] = 1;
+            received[slot] = 0;
+            participants[first].tell(new CommitOnePhase(id), getSelf());
+            messages++;
+            return;
+        }
+
+        expected[slot] = fanOut;
+        received[slot] = 0;
+        aborted[slot] = false;
+        Arrays.fill(voted, slot * words, (slot + 1) * words, 0L);
+        Arrays.fill(prepared, slot * words, (slot + 1) * words, 0L);
+        Prepare prepare = new Prepare(id);
+        for (int i = 0; i < fanOut; i++) {
+            int participant = first + i < participants.length ? first + i : first + i - participants.length;
+            participants[participant].tell(prepare, getSelf());
+        }
+        messages += fanOut;
+    }
+
+    private void handleVote(Vote msg) {
+        int slot = (int) msg.getTransactionId() & slotMask;
+        if (ids[slot] != msg.getTransactionId()) {
+            return;
+        }
+        int word = slot * words + (msg.getParticipant() >>> 6);
+        long bit = 1L << msg.getParticipant();
+        if ((voted[word] & bit) != 0) {
+            return;
+        }
+        voted[word] |= bit;
+        if (msg.getKind() == VoteKind.YES) {
+            prepared[word] |= bit;
+        } else if (msg.getKind() == VoteKind.NO) {
+            aborted[slot] = true;
+        }
+        if (++received[slot] == expected[slot]) {
+            decide(slot);
+        }
+    }
+
+    private void decide(int slot) {
+        boolean result = !aborted[slot];
+        ApplyResult apply = new ApplyResult(ids[slot], result);
+        int phaseTwo = 0;
+        for (int w = 0; w < words; w++) {
+            long bits = prepared[slot * words + w];
+            while (bits != 0) {
+                participants[(w << 6) + Long.numberOfTrailingZeros(bits)].tell(apply, getSelf());
+                bits &= bits - 1;
+                phaseTwo++;
+            }
+        }
+        messages += phaseTwo;
+        if (result && phaseTwo == 0) {
+            readOnly++;
+        }
+        finish(slot, result);
+    }
+
+    private void handleOnePhaseOutcome(ApplyResult msg) {
+        int slot = (int) msg.getTransactionId() & slotMask;
+        if (ids[slot] == msg.getTransactionId()) {
+            onePhase++;
+            finish(slot, msg.isResult());
+        }
+    }
+
+    private void finish(int slot, boolean result) {
+        latency.record(System.nanoTime() - startNanos[slot]);
+        if (result) {
+            commits++;
+        } else {
+            aborts++;
+        }
+        ids[slot] = 0;
+        freeSlots[freeCount++] = slot;
+        begin();
+    }
+
+    private void handleResetStats() {
+        latency.reset();
+        commits = 0;
+        aborts = 0;
+        readOnly = 0;
+        onePhase = 0;
+        messages = 0;
+    }
+}
@@ -0,0 +1,225 @@
+package CommitProtocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Coordinator write-ahead log: append-only 16-byte records in a memory-mapped segment.
+// Records: BEGIN (participant bits), VOTE, DECISION, END (after ApplyResult fan-out) and
+// CHECKPOINT (highest id handed out). Appends only touch memory; force() makes everything
+// appended so far durable, so the caller decides how many decisions share one fsync (group
+// commit). A record's type is written last and a zero type marks the end of the log.
+// When the segment fills, the log is checkpointed down to what recovery still needs.
+final class DecisionLog implements Closeable {
+    private static final int RECORD = 16;
+    private static final long SEGMENT = 4L << 20;
+
+    private static final int BEGIN = 1;
+    private static final int VOTE = 2;
+    private static final int DECISION = 3;
+    private static final int END = 4;
+    private static final int CHECKPOINT = 5;
+
+    // A transaction that was begun or decided but whose ApplyResult fan-out is not known to have happened
+    static final class InDoubt {
+        final long id;
+        int participants;
+        boolean decided;
+        boolean commit;
+
+        InDoubt(long id) {
+            this.id = id;
+        }
+    }
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private long lastId;
+    private long forces;
+    private long checkpoints;
+    private final Map<Long, InDoubt> inDoubt = new LinkedHashMap<>();
+
+    DecisionLog(Path path) {
+        this.path = path;
+        try {
+            open();
+            replay(inDoubt);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        map(0);
+    }
+
+    // Scans from the start, leaving the write position after the last complete record
+    private void replay(Map<Long, InDoubt> into) throws IOException {
+        while (true) {
+            if (!segment.hasRemaining()) {
+                if (segmentStart + SEGMENT >= channel.size()) {
+                    break;
+                }
+                map(segmentStart + SEGMENT);
+            }
+            int position = segment.position();
+            long id = segment.getLong();
+            int payload = segment.getInt();
+            int type = segment.getInt();
+            if (type == 0) {
+                segment.position(position);
+                break;
+            }
+            lastId = Math.max(lastId, id);
+            if (type == CHECKPOINT) {
+                continue;
+            }
+            if (type == END) {
+                into.remove(id);
+                continue;
+            }
+            InDoubt entry = into.computeIfAbsent(id, InDoubt::new);
+            if (type == BEGIN) {
+                entry.participants = payload;
+            } else if (type == DECISION) {
+                entry.decided = true;
+                entry.commit = payload != 0;
+            }
+        }
+    }
+
+    // Transactions left unfinished by the previous incarnation; undecided ones are presumed aborted
+    Collection<InDoubt> inDoubt() {
+        return inDoubt.values();
+    }
+
+    long lastTransactionId() {
+        return lastId;
+    }
+
+    void begin(long id, int participants) {
+        append(id, participants, BEGIN);
+    }
+
+    void vote(long id, int participant, boolean result) {
+        append(id, participant << 1 | (result ? 1 : 0), VOTE);
+    }
+
+    void decide(long id, boolean commit) {
+        append(id, commit ? 1 : 0, DECISION);
+    }
+
+    void end(long id) {
+        append(id, 0, END);
+    }
+
+    void force() {
+        segment.force();
+        forces++;
+    }
+
+    long forces() {
+        return forces;
+    }
+
+    long checkpoints() {
+        return checkpoints;
+    }
+
+    private void append(long id, int payload, int type) {
+        if (!segment.hasRemaining()) {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        int position = segment.position();
+        segment.putLong(position, id);
+        segment.putInt(position + 8, payload);
+        segment.putInt(position + 12, type);
+        segment.position(position + RECORD);
+    }
+
+    // Rewrites the full log as the transactions still in doubt (their BEGIN and any DECISION)
+    // after one CHECKPOINT record, and goes on appending after them, so the file stays within
+    // a segment. The copy is forced before it atomically replaces the log, and the directory
+    // is forced before anything is appended to the copy, so even a power loss at any point
+    // leaves either the full log or the checkpoint, both of which replay the same.
+    private void checkpoint() throws IOException {
+        force();
+        Map<Long, InDoubt> open = new LinkedHashMap<>();
+        map(0);
+        replay(open);
+
+        int decided = 0;
+        for (InDoubt txn : open.values()) {
+            decided += txn.decided ? 1 : 0;
+        }
+        ByteBuffer data = ByteBuffer.allocate((1 + open.size() + decided) * RECORD);
+        put(data, lastId, 0, CHECKPOINT);
+        for (InDoubt txn : open.values()) {
+            put(data, txn.id, txn.participants, BEGIN);
+            if (txn.decided) {
+                put(data, txn.id, txn.commit ? 1 : 0, DECISION);
+            }
+        }
+        data.flip();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+            out.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Until the rename is durable, decisions forced into the new file could be lost with it
+        forceDirectory(path.toAbsolutePath().getParent());
+        channel.close();
+        open();
+        long end = (long) data.limit();
+        map(end - end % SEGMENT);
+        segment.position((int) (end % SEGMENT));
+        checkpoints++;
+    }
+
+    private static void forceDirectory(Path dir) throws IOException {
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+    }
+
+    private static void put(ByteBuffer data, long id, int payload, int type) {
+        data.putLong(id).putInt(payload).putInt(type);
+    }
+
+    private void map(long start) throws IOException {
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, start, SEGMENT);
+        segmentStart = start;
+    }
+
+    @Override
+    public void close() {
+        try {
+            force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package CommitProtocol;
+
+import Common.LatencyHistogram;
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.pattern.Patterns;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Durable 2PC under open-loop load: commits/sec and fsyncs per commit at several group-commit
+// batch sizes. Each batch size then runs again in a child JVM that is killed with SIGKILL, so
+// no postStop forces the log; its logs are reopened and every decision the child reported as
+// fanned out must still be there: not rolled back to presumed abort, and its id not reused.
+// The kill keeps the page cache, so this checks the log format, checkpointing and recovery,
+// not what a power loss would do to unforced writes.
+// Usage: DecisionLogBenchmark [rate/s per coordinator] [seconds] [batches, e.g. 1,8,64,512] [maxInFlight]
+public class DecisionLogBenchmark {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final boolean[] CREATORS = {true, false, true};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("child")) {
+            runChild(Paths.get(args[1]), Integer.parseInt(args[2]), Double.parseDouble(args[3]),
+                    Integer.parseInt(args[4]));
+            return;
+        }
+        double rate = args.length > 0 ? Double.parseDouble(args[0]) : 20_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String[] batches = (args.length > 2 ? args[2] : "1,8,64,512").split(",");
+        int maxInFlight = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+
+        System.out.printf("offered %,.0f txn/s per coordinator, up to %d in flight, %ds per run%n",
+                rate, maxInFlight, seconds);
+        System.out.printf("%6s %10s %10s %10s %12s %12s %11s %10s %10s %10s %10s %6s%n", "batch", "commits/s",
+                "aborts/s", "fsyncs", "fsync/commit", "fsync/decis", "checkpoints", "p50", "p99",
+                "decided", "in doubt", "lost");
+        for (String batch : batches) {
+            run(Integer.parseInt(batch), rate, seconds, maxInFlight);
+        }
+    }
+
+    private static void run(int batch, double rate, int seconds, int maxInFlight) throws Exception {
+        long commits = 0;
+        long aborts = 0;
+        long forces = 0;
+        long checkpoints = 0;
+        LatencyHistogram latency = new LatencyHistogram();
+        Path dir = Files.createTempDirectory("decision-log");
+        try {
+            ActorSystem system = Node.loadSystem();
+            try {
+                ActorRef[] nodes = Node.ring(system, i -> Node.props(log(dir, i), batch));
+                for (int i = 0; i < nodes.length; i++) {
+                    nodes[i].tell(new Node.InitialMessage(CREATORS[i], rate, maxInFlight), ActorRef.noSender());
+                }
+                Thread.sleep(seconds * 1000L);
+                for (int i = 0; i < nodes.length; i++) {
+                    if (CREATORS[i]) {
+                        Node.Stats stats = stats(nodes[i]);
+                        commits += stats.getCommits();
+                        aborts += stats.getAborts();
+                        forces += stats.getForces();
+                        checkpoints += stats.getCheckpoints();
+                        latency.merge(stats.getCommitLatency());
+                        latency.merge(stats.getAbortLatency());
+                    }
+                }
+            } finally {
+                shutdown(system);
+            }
+        } finally {
+            delete(dir);
+        }
+
+        long[] crash = crash(batch, rate, seconds, maxInFlight);
+        System.out.printf("%6d %,10.0f %,10.0f %,10d %12.4f %12.4f %,11d %10s %10s %,10d %,10d %,6d%n", batch,
+                (double) commits / seconds, (double) aborts / seconds, forces,
+                commits == 0 ? 0 : (double) forces / commits, (double) forces / Math.max(1, commits + aborts),
+                checkpoints, LatencyHistogram.format(latency.percentile(50)),
+                LatencyHistogram.format(latency.percentile(99)), crash[0], crash[1], crash[2]);
+    }
+
+    // Returns {decisions checked, transactions in doubt after the kill, decisions lost}
+    private static long[] crash(int batch, double rate, int seconds, int maxInFlight) throws Exception {
+        Path dir = Files.createTempDirectory("decision-log");
+        try {
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            Path output = dir.resolve("decisions.txt");
+            Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    DecisionLogBenchmark.class.getName(), "child", dir.toString(), Integer.toString(batch),
+                    Double.toString(rate), Integer.toString(maxInFlight))
+                    .redirectOutput(output.toFile())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            // The clock starts once the child is deciding, not while its JVM starts up
+            long deadline = System.nanoTime() + TIMEOUT.toNanos();
+            while (readDecisions(output).isEmpty()) {
+                if (!child.isAlive() || System.nanoTime() > deadline) {
+                    child.destroyForcibly();
+                    throw new IllegalStateException("child JVM made no decisions");
+                }
+                Thread.sleep(50);
+            }
+            Thread.sleep(seconds * 1000L);
+            child.destroyForcibly();
+            child.waitFor();
+            Map<String, Map<Long, Boolean>> decided = readDecisions(output);
+
+            long checked = 0;
+            long inDoubt = 0;
+            long lost = 0;
+            for (int i = 0; i < CREATORS.length; i++) {
+                if (!CREATORS[i]) {
+                    continue;
+                }
+                try (DecisionLog log = new DecisionLog(log(dir, i))) {
+                    Map<Long, DecisionLog.InDoubt> open = new HashMap<>();
+                    for (DecisionLog.InDoubt txn : log.inDoubt()) {
+                        open.put(txn.id, txn);
+                    }
+                    inDoubt += open.size();
+                    for (Map.Entry<Long, Boolean> decision
+                            : decided.getOrDefault("node" + (i + 1), Collections.emptyMap()).entrySet()) {
+                        DecisionLog.InDoubt txn = open.get(decision.getKey());
+                        // Absent from the in-doubt set means its END survived
+                        boolean kept = decision.getKey() <= log.lastTransactionId()
+                                && (txn == null || (txn.decided && txn.commit == decision.getValue()));
+                        checked++;
+                        lost += kept ? 0 : 1;
+                    }
+                }
+            }
+            return new long[]{checked, inDoubt, lost};
+        } finally {
+            delete(dir);
+        }
+    }
+
+    // Decisions by node and transaction id; a line cut off by the kill is dropped
+    private static Map<String, Map<Long, Boolean>> readDecisions(Path output) throws IOException {
+        Map<String, Map<Long, Boolean>> decided = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(output, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields.length == 4 && fields[0].equals("decided") && (fields[3].equals("0")
+                        || fields[3].equals("1"))) {
+                    decided.computeIfAbsent(fields[1], node -> new HashMap<>())
+                            .put(Long.parseLong(fields[2]), fields[3].equals("1"));
+                }
+            }
+        }
+        return decided;
+    }
+
+    // Child JVM: the same ring and load, printing each decision once it is fanned out, until killed
+    private static void runChild(Path dir, int batch, double rate, int maxInFlight) {
+        ActorSystem system = Node.loadSystem();
+        ActorRef printer = system.actorOf(Props.create(DecisionPrinter.class), "decisions");
+        ActorRef[] nodes = Node.ring(system, i -> Node.props(log(dir, i), batch, printer));
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].tell(new Node.InitialMessage(CREATORS[i], rate, maxInFlight), ActorRef.noSender());
+        }
+    }
+
+    static class DecisionPrinter extends AbstractActor {
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(Node.Decided.class, msg -> System.out.println("decided " + getSender().path().name()
+                            + " " + msg.getTransactionId() + " " + (msg.isCommit() ? 1 : 0)))
+                    .build();
+        }
+    }
+
+    private static Path log(Path dir, int node) {
+        return dir.resolve("node" + (node + 1) + ".log");
+    }
+
+    private static Node.Stats stats(ActorRef node) throws Exception {
+        return (Node.Stats) Patterns.ask(node, new Node.GetStats(), TIMEOUT).toCompletableFuture().get();
+    }
+
+    private static void shutdown(ActorSystem system) throws Exception {
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(dir);
+    }
+}
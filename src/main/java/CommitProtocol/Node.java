@@ -1,31 +1,124 @@
 package CommitProtocol;
 
-import akka.actor.AbstractActor;
+import Common.LatencyHistogram;
+import akka.actor.AbstractActorWithTimers;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
-import java.util.Arrays;
+import akka.pattern.Patterns;
+import com.typesafe.config.ConfigFactory;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
 
-public class Node extends AbstractActor {
+public class Node extends AbstractActorWithTimers {
     private ActorRef node1;
     private ActorRef node2;
     private byte srvNo;
-    private boolean recievedResults;      // Matches Rebeca's typo
     private boolean creationAbility;
-    private int recievedResultsCounter;   // Matches Rebeca's typo
-    private int expectedResultsCounter;
-    private boolean[] cooperatorKnownRebecs = new boolean[2];
+    private final Random random = new Random();
+
+    // Per-transaction votes (Rebeca's recievedResults, counters and cooperatorKnownRebecs)
+    private final TransactionTable transactions = new TransactionTable(256);
+    private long nextTransactionId = 1;
+
+    // Decision log (null: decisions live only in memory, as in Rebeca). Decisions wait here until
+    // one force() covers the whole batch; only then are they fanned out.
+    private static final Duration FLUSH_INTERVAL = Duration.ofMillis(1);
+    private final Path logPath;
+    private final int groupCommitBatch;
+    private DecisionLog log;
+    private final long[] heldIds;
+    private final boolean[] heldResults;
+    private final int[] heldParticipants;
+    private final long[] heldArrivals;
+    private int held;
+    private long recovered;
+    // Told of each durable decision once it has been fanned out (null: nobody is watching)
+    private final ActorRef decisionWatcher;
+
+    // Participant bits in the transaction table
+    private static final int NODE1 = 1;
+    private static final int NODE2 = 2;
+    private static final int SELF = 0;
+
+    // Load-generator state: arrivals form a Poisson process in absolute time, so a transaction
+    // that waits behind a slow one is charged its queueing delay (open loop)
+    private double arrivalRate;
+    private long startNanos;
+    private long nextArrivalNanos;
+    private int maxInFlight = 1;
+    private final ArrayDeque<Long> pendingArrivals = new ArrayDeque<>();
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+    private final LatencyHistogram abortLatency = new LatencyHistogram();
+
+    public Node() {
+        this(null, 1);
+    }
+
+    public Node(Path logPath, int groupCommitBatch) {
+        this(logPath, groupCommitBatch, null);
+    }
+
+    public Node(Path logPath, int groupCommitBatch, ActorRef decisionWatcher) {
+        if (groupCommitBatch < 1) {
+            throw new IllegalArgumentException("groupCommitBatch must be at least 1");
+        }
+        this.logPath = logPath;
+        this.groupCommitBatch = groupCommitBatch;
+        this.heldIds = new long[groupCommitBatch];
+        this.heldResults = new boolean[groupCommitBatch];
+        this.heldParticipants = new int[groupCommitBatch];
+        this.heldArrivals = new long[groupCommitBatch];
+        this.decisionWatcher = decisionWatcher;
+    }
+
+    public static Props props() {
+        return Props.create(Node.class);
+    }
+
+    // Durable decisions: up to groupCommitBatch decisions share one fsync, and a partial batch
+    // is flushed after FLUSH_INTERVAL
+    public static Props props(Path logPath, int groupCommitBatch) {
+        return Props.create(Node.class, () -> new Node(logPath, groupCommitBatch, null));
+    }
+
+    // As above, also sending decisionWatcher a Decided for every decision a participant may have seen
+    public static Props props(Path logPath, int groupCommitBatch, ActorRef decisionWatcher) {
+        return Props.create(Node.class, () -> new Node(logPath, groupCommitBatch, decisionWatcher));
+    }
 
     // Messages (unchanged from original Rebeca logic)
     public static class InitialMessage {
         private final boolean creationAbility;
+        private final double arrivalRate;
+        private final int maxInFlight;
         public InitialMessage(boolean creationAbility) {
+            this(creationAbility, 0, 1);
+        }
+        // arrivalRate > 0: issue transactions at that mean rate per second instead of spinning,
+        // running up to maxInFlight of them concurrently
+        public InitialMessage(boolean creationAbility, double arrivalRate, int maxInFlight) {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("maxInFlight must be at least 1");
+            }
             this.creationAbility = creationAbility;
+            this.arrivalRate = arrivalRate;
+            this.maxInFlight = maxInFlight;
         }
         public boolean isCreationAbility() {
             return creationAbility;
         }
+        public double getArrivalRate() {
+            return arrivalRate;
+        }
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
     }
 
     public static class Setup {
@@ -44,28 +137,124 @@ public class Node extends AbstractActor {
     }
 
     public static class CreateTransaction {}
-    public static class StartGlobalTransaction {}
+
+    public static class StartGlobalTransaction {
+        private final long transactionId;
+        public StartGlobalTransaction(long transactionId) {
+            this.transactionId = transactionId;
+        }
+        public long getTransactionId() {
+            return transactionId;
+        }
+    }
 
     public static class CooperatorResponse {
+        private final long transactionId;
         private final boolean result;
-        public CooperatorResponse(boolean result) {
+        public CooperatorResponse(long transactionId, boolean result) {
+            this.transactionId = transactionId;
             this.result = result;
         }
+        public long getTransactionId() {
+            return transactionId;
+        }
         public boolean isResult() {
             return result;
         }
     }
 
     public static class ApplyResult {
+        private final long transactionId;
         private final boolean result;
-        public ApplyResult(boolean result) {
+        public ApplyResult(long transactionId, boolean result) {
+            this.transactionId = transactionId;
             this.result = result;
         }
+        public long getTransactionId() {
+            return transactionId;
+        }
         public boolean isResult() {
             return result;
         }
     }
 
+    // Load-generator messages
+    private static class Arrival {
+        static final Arrival INSTANCE = new Arrival();
+    }
+
+    private static class Flush {
+        static final Flush INSTANCE = new Flush();
+    }
+
+    public static class Decided {
+        private final long transactionId;
+        private final boolean commit;
+        public Decided(long transactionId, boolean commit) {
+            this.transactionId = transactionId;
+            this.commit = commit;
+        }
+        public long getTransactionId() {
+            return transactionId;
+        }
+        public boolean isCommit() {
+            return commit;
+        }
+    }
+
+    public static class GetStats {}
+
+    public static class Stats {
+        private final long commits;
+        private final long aborts;
+        private final long backlog;
+        private final long elapsedNanos;
+        private final long forces;
+        private final long checkpoints;
+        private final long recovered;
+        private final LatencyHistogram commitLatency;
+        private final LatencyHistogram abortLatency;
+        public Stats(long commits, long aborts, long backlog, long elapsedNanos, long forces, long checkpoints,
+                     long recovered, LatencyHistogram commitLatency, LatencyHistogram abortLatency) {
+            this.commits = commits;
+            this.aborts = aborts;
+            this.backlog = backlog;
+            this.elapsedNanos = elapsedNanos;
+            this.forces = forces;
+            this.checkpoints = checkpoints;
+            this.recovered = recovered;
+            this.commitLatency = commitLatency;
+            this.abortLatency = abortLatency;
+        }
+        public long getCommits() {
+            return commits;
+        }
+        public long getAborts() {
+            return aborts;
+        }
+        public long getBacklog() {
+            return backlog;
+        }
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+        public long getForces() {
+            return forces;
+        }
+        public long getCheckpoints() {
+            return checkpoints;
+        }
+        public long getRecovered() {
+            return recovered;
+        }
+        public LatencyHistogram getCommitLatency() {
+            return commitLatency;
+        }
+        public LatencyHistogram getAbortLatency() {
+            return abortLatency;
+        }
+    }
+
     @Override
     public Receive createReceive() {
         return receiveBuilder()
@@ -75,89 +264,235 @@ public class Node extends AbstractActor {
                 .match(StartGlobalTransaction.class, this::handleStartGlobalTransaction)
                 .match(CooperatorResponse.class, this::handleCooperatorResponse)
                 .match(ApplyResult.class, this::handleApplyResult)
+                .match(Arrival.class, msg -> handleArrival())
+                .match(Flush.class, msg -> flush())
+                .match(GetStats.class, msg -> handleGetStats())
                 .build();
     }
 
+    @Override
+    public void preStart() {
+        if (logPath != null) {
+            log = new DecisionLog(logPath);
+            nextTransactionId = log.lastTransactionId() + 1;
+        }
+    }
+
+    @Override
+    public void postStop() {
+        if (log != null) {
+            log.close();
+        }
+    }
+
     private void handleSetup(Setup msg) {
         this.node1 = msg.getNode1();
         this.node2 = msg.getNode2();
+        if (log != null) {
+            recover();
+        }
+    }
+
+    // Finish what the previous incarnation left in doubt: resend logged decisions, abort the rest
+    private void recover() {
+        for (DecisionLog.InDoubt txn : log.inDoubt()) {
+            boolean result = txn.decided && txn.commit;
+            sendApplyResult(txn.id, result, txn.participants);
+            log.end(txn.id);
+            recovered++;
+        }
+        log.force();
     }
 
     private void handleInitial(InitialMessage msg) {
         this.creationAbility = msg.isCreationAbility();
-        getSelf().tell(new CreateTransaction(), getSelf());
+        this.arrivalRate = msg.getArrivalRate();
+        this.maxInFlight = msg.getMaxInFlight();
+        if (arrivalRate <= 0) {
+            getSelf().tell(new CreateTransaction(), getSelf());
+        } else if (creationAbility) {
+            startNanos = System.nanoTime();
+            nextArrivalNanos = startNanos + interArrivalNanos();
+            scheduleArrival(startNanos);
+        }
     }
 
     private void handleCreateTransaction(CreateTransaction msg) {
-        Random random = new Random();
         boolean startTrans = random.nextBoolean();
 
         if (startTrans && creationAbility) {
-            Arrays.fill(cooperatorKnownRebecs, false);
-            recievedResults = true;
-            recievedResultsCounter = 0;
-            expectedResultsCounter = 0;
-
-            this.srvNo = 1;
-            // Mirror Rebeca's non-deterministic cooperator selection
-            if (random.nextBoolean()) {
-                cooperatorKnownRebecs[0] = true;
-                expectedResultsCounter++;
-                node1.tell(new StartGlobalTransaction(), getSelf());
-            }
-            if (random.nextBoolean()) {
-                cooperatorKnownRebecs[1] = true;
-                expectedResultsCounter++;
-                node2.tell(new StartGlobalTransaction(), getSelf());
-            }
-
-            // Local result (matches Rebeca's self.cooperatorResponse)
-            expectedResultsCounter++;
-            boolean localResult = random.nextBoolean();
-            getSelf().tell(new CooperatorResponse(localResult), getSelf());
+            beginTransaction(System.nanoTime());
         } else {
             getSelf().tell(new CreateTransaction(), getSelf());
         }
     }
 
+    private void beginTransaction(long arrivalNanos) {
+        long id = nextTransactionId++;
+        int slot = transactions.put(id, arrivalNanos);
+
+        this.srvNo = 1;
+        // Mirror Rebeca's non-deterministic cooperator selection
+        if (random.nextBoolean()) {
+            transactions.expect(slot, NODE1);
+        }
+        if (random.nextBoolean()) {
+            transactions.expect(slot, NODE2);
+        }
+        int participants = transactions.participants(slot);
+        if (log != null) {
+            log.begin(id, participants);
+        }
+        if ((participants & NODE1) != 0) {
+            node1.tell(new StartGlobalTransaction(id), getSelf());
+        }
+        if ((participants & NODE2) != 0) {
+            node2.tell(new StartGlobalTransaction(id), getSelf());
+        }
+
+        // Local result (matches Rebeca's self.cooperatorResponse)
+        transactions.expect(slot, SELF);
+        boolean localResult = random.nextBoolean();
+        getSelf().tell(new CooperatorResponse(id, localResult), getSelf());
+    }
+
+    // Timers fire on scheduler ticks, so every arrival that fell due since the last one is
+    // admitted here with its own scheduled timestamp
+    private void handleArrival() {
+        long now = System.nanoTime();
+        while (nextArrivalNanos <= now) {
+            pendingArrivals.add(nextArrivalNanos);
+            nextArrivalNanos += interArrivalNanos();
+        }
+        beginPendingArrivals();
+        scheduleArrival(now);
+    }
+
+    private void beginPendingArrivals() {
+        while (transactions.size() < maxInFlight && !pendingArrivals.isEmpty()) {
+            beginTransaction(pendingArrivals.poll());
+        }
+    }
+
+    private void scheduleArrival(long now) {
+        getTimers().startSingleTimer("arrival", Arrival.INSTANCE, Duration.ofNanos(nextArrivalNanos - now));
+    }
+
+    private long interArrivalNanos() {
+        return (long) (-Math.log(1.0 - random.nextDouble()) / arrivalRate * 1e9);
+    }
+
+    private void handleGetStats() {
+        getSender().tell(new Stats(commitLatency.count(), abortLatency.count(), pendingArrivals.size(),
+                System.nanoTime() - startNanos, log == null ? 0 : log.forces(), log == null ? 0 : log.checkpoints(),
+                recovered, commitLatency, abortLatency), getSelf());
+    }
+
     // Matches Rebeca's sender-checking logic
     private void handleStartGlobalTransaction(StartGlobalTransaction msg) {
-        boolean result = new Random().nextBoolean();
+        boolean result = random.nextBoolean();
         ActorRef sender = getSender();
         if (sender.equals(node1)) {
-            node1.tell(new CooperatorResponse(result), getSelf());
+            node1.tell(new CooperatorResponse(msg.getTransactionId(), result), getSelf());
         } else if (sender.equals(node2)) {
-            node2.tell(new CooperatorResponse(result), getSelf());
+            node2.tell(new CooperatorResponse(msg.getTransactionId(), result), getSelf());
         }
     }
 
     private void handleCooperatorResponse(CooperatorResponse msg) {
-        recievedResultsCounter++;
-        if (!msg.isResult()) {
-            recievedResults = false;
+        long id = msg.getTransactionId();
+        int slot = transactions.slot(id);
+        if (slot < 0) {
+            return;
+        }
+        if (log != null) {
+            ActorRef sender = getSender();
+            log.vote(id, sender.equals(node1) ? NODE1 : sender.equals(node2) ? NODE2 : SELF, msg.isResult());
+        }
+        if (!transactions.vote(slot, msg.isResult())) {
+            return;
         }
 
-        if (recievedResultsCounter == expectedResultsCounter) {
-            if (cooperatorKnownRebecs[0]) {
-                node1.tell(new ApplyResult(recievedResults), getSelf());
-            }
-            if (cooperatorKnownRebecs[1]) {
-                node2.tell(new ApplyResult(recievedResults), getSelf());
-            }
+        boolean result = transactions.result(slot);
+        int participants = transactions.participants(slot);
+        long arrival = transactions.arrivalNanos(slot);
+        transactions.remove(slot);
+        if (log == null) {
+            applyResult(id, result, participants, arrival);
+        } else {
+            log.decide(id, result);
+            hold(id, result, participants, arrival);
+        }
+        if (arrivalRate > 0) {
+            beginPendingArrivals();
+        } else {
             getSelf().tell(new CreateTransaction(), getSelf());
         }
     }
 
+    private void hold(long id, boolean result, int participants, long arrival) {
+        if (held == 0) {
+            getTimers().startSingleTimer("flush", Flush.INSTANCE, FLUSH_INTERVAL);
+        }
+        heldIds[held] = id;
+        heldResults[held] = result;
+        heldParticipants[held] = participants;
+        heldArrivals[held] = arrival;
+        if (++held == groupCommitBatch) {
+            flush();
+        }
+    }
+
+    // Group commit: one fsync makes every held decision durable, then all of them are fanned out
+    private void flush() {
+        getTimers().cancel("flush");
+        if (held == 0) {
+            return;
+        }
+        log.force();
+        for (int i = 0; i < held; i++) {
+            applyResult(heldIds[i], heldResults[i], heldParticipants[i], heldArrivals[i]);
+            log.end(heldIds[i]);
+            if (decisionWatcher != null) {
+                decisionWatcher.tell(new Decided(heldIds[i], heldResults[i]), getSelf());
+            }
+        }
+        held = 0;
+    }
+
+    private void applyResult(long id, boolean result, int participants, long arrival) {
+        sendApplyResult(id, result, participants);
+        if (arrivalRate > 0) {
+            (result ? commitLatency : abortLatency).record(System.nanoTime() - arrival);
+        }
+    }
+
+    private void sendApplyResult(long id, boolean result, int participants) {
+        if ((participants & NODE1) != 0) {
+            node1.tell(new ApplyResult(id, result), getSelf());
+        }
+        if ((participants & NODE2) != 0) {
+            node2.tell(new ApplyResult(id, result), getSelf());
+        }
+    }
+
     private void handleApplyResult(ApplyResult msg) {
         // No action (matches Rebeca)
     }
 
-    public static void main(String[] args) {
+    // Usage: Node                          (original Rebeca model, spins forever)
+    //        Node <rate/s per coordinator> [seconds] [maxInFlight]   (open-loop load generator)
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            runLoad(Double.parseDouble(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 10,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 256);
+            return;
+        }
         ActorSystem system = ActorSystem.create("TwoPhaseCommit");
 
-        ActorRef node1 = system.actorOf(Props.create(Node.class), "node1");
-        ActorRef node2 = system.actorOf(Props.create(Node.class), "node2");
-        ActorRef node3 = system.actorOf(Props.create(Node.class), "node3");
+        ActorRef node1 = system.actorOf(props(), "node1");
+        ActorRef node2 = system.actorOf(props(), "node2");
+        ActorRef node3 = system.actorOf(props(), "node3");
 
         // Setup relationships (matches Rebeca's main block)
         node1.tell(new Setup(node2, node3), ActorRef.noSender());
@@ -170,4 +505,57 @@ public class Node extends AbstractActor {
         node2.tell(new InitialMessage(false), ActorRef.noSender());
         node3.tell(new InitialMessage(true), ActorRef.noSender());
     }
+
+    // Poisson inter-arrivals are sub-millisecond at useful rates; the 10ms default tick is too coarse
+    static ActorSystem loadSystem() {
+        return ActorSystem.create("TwoPhaseCommit",
+                ConfigFactory.parseString("akka.scheduler.tick-duration = 1ms").withFallback(ConfigFactory.load()));
+    }
+
+    // The three-node wiring of Rebeca's main block, with node i created from props(i)
+    static ActorRef[] ring(ActorSystem system, IntFunction<Props> props) {
+        ActorRef[] nodes = new ActorRef[3];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = system.actorOf(props.apply(i), "node" + (i + 1));
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].tell(new Setup(nodes[(i + 1) % 3], nodes[(i + 2) % 3]), ActorRef.noSender());
+        }
+        return nodes;
+    }
+
+    private static void runLoad(double rate, int seconds, int maxInFlight) throws Exception {
+        ActorSystem system = loadSystem();
+        try {
+            ActorRef[] nodes = ring(system, i -> props());
+            boolean[] creators = {true, false, true};
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i].tell(new InitialMessage(creators[i], rate, maxInFlight), ActorRef.noSender());
+            }
+
+            Thread.sleep(seconds * 1000L);
+            LatencyHistogram all = new LatencyHistogram();
+            long commits = 0;
+            System.out.printf("offered %,.0f txn/s per coordinator for %ds, up to %d in flight%n",
+                    rate, seconds, maxInFlight);
+            for (int i = 0; i < nodes.length; i++) {
+                if (!creators[i]) {
+                    continue;
+                }
+                Stats stats = (Stats) Patterns.ask(nodes[i], new GetStats(), Duration.ofSeconds(10))
+                        .toCompletableFuture().get();
+                double elapsed = stats.getElapsedNanos() / 1e9;
+                System.out.printf("node%d  commits/s=%,.0f aborts/s=%,.0f backlog=%d%n", i + 1,
+                        stats.getCommits() / elapsed, stats.getAborts() / elapsed, stats.getBacklog());
+                System.out.printf("       commit %s%n       abort  %s%n",
+                        stats.getCommitLatency(), stats.getAbortLatency());
+                all.merge(stats.getCommitLatency());
+                commits += stats.getCommits();
+            }
+            System.out.printf("total  commits/s=%,.0f  commit %s%n", commits / (double) seconds, all);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
 }
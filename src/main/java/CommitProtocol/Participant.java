@@ -0,0 +1,68 @@
+package CommitProtocol;
+
+import Common.ChannelModel;
+import akka.actor.AbstractActor;
+import akka.actor.Props;
+
+import java.time.Duration;
+import java.util.Random;
+
+// Replies go through a ChannelModel, so a participant can sit a network delay away.
+// Latency only: without timeouts in the coordinator a lost vote would stall its transaction.
+class Participant extends AbstractActor {
+    private final int index;
+    private final double noRate;
+    private final double readOnlyRate;
+    private final Random random;
+    private final ChannelModel link;
+    private long applied;
+
+    Participant(int index, double noRate, double readOnlyRate, long seed, ChannelModel link) {
+        this.index = index;
+        this.noRate = noRate;
+        this.readOnlyRate = readOnlyRate;
+        this.random = new Random(seed);
+        this.link = link;
+    }
+
+    static Props props(int index, double noRate, double readOnlyRate, long seed) {
+        return props(index, noRate, readOnlyRate, seed, Duration.ZERO);
+    }
+
+    // replyLatency is the mean of an exponential delay on every vote and one-phase outcome.
+    // The link is seeded apart from the votes, or each delay would mirror the vote it carries.
+    static Props props(int index, double noRate, double readOnlyRate, long seed, Duration replyLatency) {
+        return Props.create(Participant.class, () -> new Participant(index, noRate, readOnlyRate, seed,
+                new ChannelModel(seed * 0x9E3779B97F4A7C15L + 1).withLatency(replyLatency.isZero()
+                        ? ChannelModel.constant(Duration.ZERO) : ChannelModel.exponential(replyLatency))));
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Coordinator.Prepare.class, this::handlePrepare)
+                .match(Coordinator.CommitOnePhase.class, this::handleCommitOnePhase)
+                .match(Coordinator.ApplyResult.class, msg -> applied++)
+                .build();
+    }
+
+    private void handlePrepare(Coordinator.Prepare msg) {
+        link.transmit(getContext(), getSender(), new Coordinator.Vote(msg.getTransactionId(), index, vote()),
+                getSelf());
+    }
+
+    // Sole participant: prepare and decide locally, no separate vote round
+    private void handleCommitOnePhase(Coordinator.CommitOnePhase msg) {
+        boolean result = vote() != Coordinator.VoteKind.NO;
+        link.transmit(getContext(), getSender(), new Coordinator.ApplyResult(msg.getTransactionId(), result),
+                getSelf());
+    }
+
+    private Coordinator.VoteKind vote() {
+        double draw = random.nextDouble();
+        if (draw < noRate) {
+            return Coordinator.VoteKind.NO;
+        }
+        return draw < noRate + readOnlyRate ? Coordinator.VoteKind.READ_ONLY : Coordinator.VoteKind.YES;
+    }
+}
@@ -0,0 +1,151 @@
+package CommitProtocol;
+
+// Coordinator-side state of in-flight transactions, keyed by transaction id.
+// Open addressing with linear probing over parallel primitive arrays: an entry costs a few
+// array slots, not a boxed key, a map node and a state object. Id 0 marks an empty slot.
+// Slots are stable until the next put or remove.
+final class TransactionTable {
+    private static final long EMPTY = 0;
+
+    private long[] ids;
+    private long[] arrivalNanos;
+    private int[] expected;
+    private int[] received;
+    private byte[] participants;   // bit 0: node1, bit 1: node2
+    private boolean[] results;
+    private int mask;
+    private int size;
+
+    TransactionTable(int expectedInFlight) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedInFlight * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int put(long id, long arrival) {
+        if (id == EMPTY) {
+            throw new IllegalArgumentException("transaction id 0 is reserved");
+        }
+        if ((size + 1) * 2 > ids.length) {
+            resize();
+        }
+        int slot = home(id);
+        while (ids[slot] != EMPTY) {
+            if (ids[slot] == id) {
+                throw new IllegalStateException("transaction " + id + " already in flight");
+            }
+            slot = (slot + 1) & mask;
+        }
+        ids[slot] = id;
+        arrivalNanos[slot] = arrival;
+        expected[slot] = 0;
+        received[slot] = 0;
+        participants[slot] = 0;
+        results[slot] = true;
+        size++;
+        return slot;
+    }
+
+    // Slot of id, or -1 if it is not in flight (e.g. a late reply after the decision)
+    int slot(long id) {
+        int slot = home(id);
+        while (ids[slot] != EMPTY) {
+            if (ids[slot] == id) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    void expect(int slot, int participantBit) {
+        participants[slot] |= participantBit;
+        expected[slot]++;
+    }
+
+    // Records a vote; true once every expected vote is in
+    boolean vote(int slot, boolean result) {
+        if (!result) {
+            results[slot] = false;
+        }
+        return ++received[slot] == expected[slot];
+    }
+
+    int participants(int slot) {
+        return participants[slot];
+    }
+
+    boolean result(int slot) {
+        return results[slot];
+    }
+
+    long arrivalNanos(int slot) {
+        return arrivalNanos[slot];
+    }
+
+    // Backward-shift deletion keeps probe chains intact without tombstones
+    void remove(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (ids[next] != EMPTY) {
+            int home = home(ids[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                move(next, hole);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        ids[hole] = EMPTY;
+        size--;
+    }
+
+    private void move(int from, int to) {
+        ids[to] = ids[from];
+        arrivalNanos[to] = arrivalNanos[from];
+        expected[to] = expected[from];
+        received[to] = received[from];
+        participants[to] = participants[from];
+        results[to] = results[from];
+    }
+
+    private int home(long id) {
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private void allocate(int capacity) {
+        ids = new long[capacity];
+        arrivalNanos = new long[capacity];
+        expected = new int[capacity];
+        received = new int[capacity];
+        participants = new byte[capacity];
+        results = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private void resize() {
+        long[] oldIds = ids;
+        long[] oldArrivals = arrivalNanos;
+        int[] oldExpected = expected;
+        int[] oldReceived = received;
+        byte[] oldParticipants = participants;
+        boolean[] oldResults = results;
+        allocate(oldIds.length * 2);
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != EMPTY) {
+                int slot = home(oldIds[i]);
+                while (ids[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                ids[slot] = oldIds[i];
+                arrivalNanos[slot] = oldArrivals[i];
+                expected[slot] = oldExpected[i];
+                received[slot] = oldReceived[i];
+                participants[slot] = oldParticipants[i];
+                results[slot] = oldResults[i];
+            }
+        }
+    }
+}
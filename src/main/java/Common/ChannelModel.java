@@ -0,0 +1,141 @@
+package Common;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+
+import java.time.Duration;
+import java.util.Random;
+
+// Seeded model of an unreliable link: loss, latency, reordering and duplication.
+// Decisions come from one seeded Random, so the same seed replays the same fate for the
+// same message sequence; delays are scheduled on the actor system's scheduler, never slept.
+// Not thread-safe: give each sending actor its own instance.
+public class ChannelModel {
+
+    public interface LossModel {
+        boolean drop(Random random);
+    }
+
+    public interface Latency {
+        long nanos(Random random);
+    }
+
+    private final Random random;
+    private LossModel loss = random -> false;
+    private Latency latency = constant(Duration.ZERO);
+    private double reorderProbability;
+    private Latency reorderDelay = constant(Duration.ZERO);
+    private double duplicateProbability;
+
+    private long offered;
+    private long dropped;
+    private long duplicated;
+
+    public ChannelModel(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public static ChannelModel bernoulli(double lossRate, long seed) {
+        return new ChannelModel(seed).withLoss(bernoulli(lossRate));
+    }
+
+    public ChannelModel withLoss(LossModel loss) {
+        this.loss = loss;
+        return this;
+    }
+
+    public ChannelModel withLatency(Latency latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    // A reordered message is held back by an extra delay so that later ones overtake it
+    public ChannelModel withReordering(double probability, Latency extraDelay) {
+        this.reorderProbability = probability;
+        this.reorderDelay = extraDelay;
+        return this;
+    }
+
+    public ChannelModel withDuplication(double probability) {
+        this.duplicateProbability = probability;
+        return this;
+    }
+
+    // Loss models
+
+    public static LossModel bernoulli(double lossRate) {
+        return random -> random.nextDouble() < lossRate;
+    }
+
+    // Two-state burst-loss model; each instance carries its own good/bad state
+    public static LossModel gilbertElliott(double goodToBad, double badToGood, double lossInGood, double lossInBad) {
+        return new LossModel() {
+            private boolean bad;
+
+            @Override
+            public boolean drop(Random random) {
+                bad = bad ? random.nextDouble() >= badToGood : random.nextDouble() < goodToBad;
+                return random.nextDouble() < (bad ? lossInBad : lossInGood);
+            }
+        };
+    }
+
+    // Latency distributions
+
+    public static Latency constant(Duration delay) {
+        long nanos = delay.toNanos();
+        return random -> nanos;
+    }
+
+    public static Latency uniform(Duration min, Duration max) {
+        long low = min.toNanos();
+        long span = max.toNanos() - low;
+        return random -> low + (long) (random.nextDouble() * span);
+    }
+
+    public static Latency exponential(Duration mean) {
+        double meanNanos = mean.toNanos();
+        return random -> (long) (-meanNanos * Math.log(1.0 - random.nextDouble()));
+    }
+
+    // Offers msg to the link; returns the number of copies that will be delivered (0, 1 or 2)
+    public int transmit(AbstractActor.ActorContext context, ActorRef to, Object msg, ActorRef sender) {
+        offered++;
+        if (loss.drop(random)) {
+            dropped++;
+            return 0;
+        }
+        deliver(context, to, msg, sender);
+        if (duplicateProbability > 0 && random.nextDouble() < duplicateProbability) {
+            duplicated++;
+            deliver(context, to, msg, sender);
+            return 2;
+        }
+        return 1;
+    }
+
+    private void deliver(AbstractActor.ActorContext context, ActorRef to, Object msg, ActorRef sender) {
+        long delay = latency.nanos(random);
+        if (reorderProbability > 0 && random.nextDouble() < reorderProbability) {
+            delay += reorderDelay.nanos(random);
+        }
+        if (delay <= 0) {
+            to.tell(msg, sender);
+        } else {
+            context.getSystem().scheduler().scheduleOnce(
+                    Duration.ofNanos(delay), to, msg, context.getDispatcher(), sender);
+        }
+    }
+
+    public long offered() {
+        return offered;
+    }
+
+    public long dropped() {
+        return dropped;
+    }
+
+    public long duplicated() {
+        return duplicated;
+    }
+}
@@ -0,0 +1,16 @@
+package Common;
+
+// Outcome of one ring election run
+public class ElectionResult {
+    public final int leader;
+    public final long messages;
+    public final long electionNanos;
+    public final long totalNanos;
+
+    public ElectionResult(int leader, long messages, long electionNanos, long totalNanos) {
+        this.leader = leader;
+        this.messages = messages;
+        this.electionNanos = electionNanos;
+        this.totalNanos = totalNanos;
+    }
+}
@@ -0,0 +1,26 @@
+package Common;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Event logging for model actors. Loggers are named after the actor class, so a model's
+// package is its switch: logback.xml reads each package's level from -Devents.<package>
+// (default INFO), and setEnabled flips it at runtime, e.g. before a benchmark run.
+// Callers guard with isInfoEnabled() and use {} placeholders, so a silenced model pays one
+// level check per event and builds no strings.
+public final class EventLog {
+    private EventLog() {
+    }
+
+    public static Logger logger(Class<?> actorClass) {
+        return LoggerFactory.getLogger(actorClass);
+    }
+
+    public static void setEnabled(String model, boolean enabled) {
+        Logger logger = LoggerFactory.getLogger(model);
+        if (logger instanceof ch.qos.logback.classic.Logger) {
+            ((ch.qos.logback.classic.Logger) logger).setLevel(enabled ? Level.INFO : Level.OFF);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package Common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// HDR-style log-linear histogram of nanosecond values. Every power of two is split into
+// 2^subBucketBits linear buckets, so the relative error is at most 2^-subBucketBits
+// (5 bits: ~3%, 0 bits: plain power-of-two buckets for when thousands of copies are kept).
+// Recording is lock-free, so one instance may be shared by many actors.
+public class LatencyHistogram {
+    private final int subBucketBits;
+    private final int subBucketCount;
+    private final AtomicLongArray counts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram() {
+        this(5);
+    }
+
+    public LatencyHistogram(int subBucketBits) {
+        if (subBucketBits < 0 || subBucketBits > 10) {
+            throw new IllegalArgumentException("subBucketBits must be in [0, 10]");
+        }
+        this.subBucketBits = subBucketBits;
+        this.subBucketCount = 1 << subBucketBits;
+        this.counts = new AtomicLongArray((64 - subBucketBits) * subBucketCount);
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    public void merge(LatencyHistogram other) {
+        if (other.subBucketBits != subBucketBits) {
+            throw new IllegalArgumentException("cannot merge histograms of different precision");
+        }
+        for (int i = 0; i < counts.length(); i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+        count.addAndGet(other.count());
+        sum.addAndGet(other.sum.get());
+        long otherMax = other.max();
+        long current;
+        while (otherMax > (current = max.get()) && !max.compareAndSet(current, otherMax)) {
+            // retry
+        }
+    }
+
+    // Not atomic with respect to concurrent record(); reset between measurement phases
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    // Highest value equivalent to the bucket holding the given percentile (0-100)
+    public long percentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalent(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private int indexOf(long value) {
+        if (value < subBucketCount) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - subBucketBits;
+        return (shift + 1) * subBucketCount + (int) (value >>> shift) - subBucketCount;
+    }
+
+    private long highestEquivalent(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+        int shift = index / subBucketCount - 1;
+        long lowest = (long) (index % subBucketCount + subBucketCount) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d p50=%s p99=%s p999=%s max=%s", count(),
+                format(percentile(50)), format(percentile(99)), format(percentile(99.9)), format(max()));
+    }
+
+    public static String format(long nanos) {
+        if (nanos < 10_000) {
+            return nanos + "ns";
+        }
+        if (nanos < 10_000_000) {
+            return String.format("%.1fus", nanos / 1e3);
+        }
+        return String.format("%.1fms", nanos / 1e6);
+    }
+}
@@ -0,0 +1,27 @@
+package Common;
+
+import java.util.Random;
+
+// ID assignments for ring-based election models. Index i is the i-th node in the direction
+// messages travel, so ASCENDING is LCR's best case (every ID dies after one hop) and
+// DESCENDING its O(n^2) worst case.
+public class RingIds {
+    public enum Order { RANDOM, ASCENDING, DESCENDING }
+
+    public static int[] generate(int n, Order order, long seed) {
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = order == Order.DESCENDING ? n - i : i + 1;
+        }
+        if (order == Order.RANDOM) {
+            Random random = new Random(seed);
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = ids[i];
+                ids[i] = ids[j];
+                ids[j] = tmp;
+            }
+        }
+        return ids;
+    }
+}
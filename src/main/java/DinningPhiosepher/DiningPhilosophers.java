@@ -1,28 +1,39 @@
 package DinningPhiosepher;
 
+import Common.EventLog;
+import Common.LatencyHistogram;
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
+import akka.pattern.Patterns;
+import org.slf4j.Logger;
 
-// Messages for Philosopher
-class PhilosopherMessages {
-    static class Initial {}
-    static class Arrive {}
-    static class Permit {}
-    static class Eat {}
-    static class Leave {}
-}
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 // Messages for Fork
 class ForkMessages {
     static class Initial {}
     static class Request {}
     static class Release {}
+    // Forks are created before the philosophers, so they learn their neighbors afterwards
+    static class Setup {
+        final ActorRef philL;
+        final ActorRef philR;
+
+        Setup(ActorRef philL, ActorRef philR) {
+            this.philL = philL;
+            this.philR = philR;
+        }
+    }
 }
 
 // Philosopher Actor
 class Philosopher extends AbstractActor {
+    private static final Logger log = EventLog.logger(Philosopher.class);
+
+    private final String name = getSelf().path().name();
     private final ActorRef forkL;
     private final ActorRef forkR;
 
@@ -30,6 +41,14 @@ class Philosopher extends AbstractActor {
     private boolean fL;
     private boolean fR;
 
+    // Metrics: wait is Arrive to Eat; the starvation gap is the longest time between meals
+    private final LatencyHistogram waits = new LatencyHistogram(0);
+    private long arrivedAt;
+    private long lastMealAt;
+    private long maxGap;
+    private long meals;
+    private long deadline = Long.MAX_VALUE;
+
     public Philosopher(ActorRef forkL, ActorRef forkR) {
         this.forkL = forkL;
         this.forkR = forkR;
@@ -42,31 +61,56 @@ class Philosopher extends AbstractActor {
                     fL = false;
                     fR = false;
                     this.eating = false;
-                    System.out.println(getSelf().path().name() + " initialized.");
+                    lastMealAt = System.nanoTime();
+                    deadline = msg.deadlineNanos;
+                    if (log.isInfoEnabled()) {
+                        log.info("{} initialized.", name);
+                    }
                     self().tell(new PhilosopherMessages.Arrive(), self());
                 })
                 .match(PhilosopherMessages.Arrive.class, msg -> {
-                    System.out.println(getSelf().path().name() + " is arriving and requesting left fork.");
+                    arrivedAt = System.nanoTime();
+                    if (arrivedAt - deadline >= 0) {
+                        return;
+                    }
+                    if (log.isInfoEnabled()) {
+                        log.info("{} is arriving and requesting left fork.", name);
+                    }
                     forkL.tell(new ForkMessages.Request(), self());
                 })
                 .match(PhilosopherMessages.Permit.class, msg -> {
                     if (sender().equals(forkL) && !fL) {
                         fL = true;
-                        System.out.println(getSelf().path().name() + " acquired left fork.");
+                        if (log.isInfoEnabled()) {
+                            log.info("{} acquired left fork.", name);
+                        }
                         forkR.tell(new ForkMessages.Request(), self());
                     } else if (sender().equals(forkR) && fL && !fR) {
                         fR = true;
-                        System.out.println(getSelf().path().name() + " acquired right fork. Ready to eat.");
+                        if (log.isInfoEnabled()) {
+                            log.info("{} acquired right fork. Ready to eat.", name);
+                        }
                         self().tell(new PhilosopherMessages.Eat(), self());
                     }
                 })
                 .match(PhilosopherMessages.Eat.class, msg -> {
                     eating = true;
-                    System.out.println(getSelf().path().name() + " is eating.");
+                    long now = System.nanoTime();
+                    if (now - deadline < 0) {
+                        waits.record(now - arrivedAt);
+                        maxGap = Math.max(maxGap, now - lastMealAt);
+                        lastMealAt = now;
+                        meals++;
+                    }
+                    if (log.isInfoEnabled()) {
+                        log.info("{} is eating.", name);
+                    }
                     self().tell(new PhilosopherMessages.Leave(), self());
                 })
                 .match(PhilosopherMessages.Leave.class, msg -> {
-                    System.out.println(getSelf().path().name() + " finished eating and is releasing forks.");
+                    if (log.isInfoEnabled()) {
+                        log.info("{} finished eating and is releasing forks.", name);
+                    }
                     fL = false;
                     fR = false;
                     eating = false;
@@ -74,6 +118,12 @@ class Philosopher extends AbstractActor {
                     forkR.tell(new ForkMessages.Release(), self());
                     self().tell(new PhilosopherMessages.Arrive(), self());
                 })
+                .match(PhilosopherMessages.GetStats.class, msg -> {
+                    // A philosopher that was still waiting counts its current gap too
+                    long end = System.nanoTime() - deadline < 0 ? System.nanoTime() : deadline;
+                    long gap = Math.max(maxGap, end - lastMealAt);
+                    sender().tell(new PhilosopherMessages.Stats(meals, gap, waits), self());
+                })
                 .build();
     }
 
@@ -84,8 +134,11 @@ class Philosopher extends AbstractActor {
 
 // Fork Actor
 class Fork extends AbstractActor {
-    private final ActorRef philL;
-    private final ActorRef philR;
+    private static final Logger log = EventLog.logger(Fork.class);
+
+    private final String name = getSelf().path().name();
+    private ActorRef philL;
+    private ActorRef philR;
 
     private boolean lAssign;
     private boolean rAssign;
@@ -100,21 +153,31 @@ class Fork extends AbstractActor {
     @Override
     public Receive createReceive() {
         return receiveBuilder()
+                .match(ForkMessages.Setup.class, msg -> {
+                    philL = msg.philL;
+                    philR = msg.philR;
+                })
                 .match(ForkMessages.Initial.class, msg -> {
                     lAssign = false;
                     rAssign = false;
                     leftReq = false;
                     rightReq = false;
-                    System.out.println(getSelf().path().name() + " initialized.");
+                    if (log.isInfoEnabled()) {
+                        log.info("{} initialized.", name);
+                    }
                 })
                 .match(ForkMessages.Request.class, msg -> {
-                    System.out.println(getSelf().path().name() + " received request from " + sender().path().name());
+                    if (log.isInfoEnabled()) {
+                        log.info("{} received request from {}", name, sender().path().name());
+                    }
                     if (sender().equals(philL)) {
                         if (!leftReq) {
                             leftReq = true;
                             if (!rAssign) {
                                 lAssign = true;
-                                System.out.println(getSelf().path().name() + " assigned to " + philL.path().name());
+                                if (log.isInfoEnabled()) {
+                                    log.info("{} assigned to {}", name, philL.path().name());
+                                }
                                 philL.tell(new PhilosopherMessages.Permit(), self());
                             }
                         }
@@ -123,20 +186,26 @@ class Fork extends AbstractActor {
                             rightReq = true;
                             if (!lAssign) {
                                 rAssign = true;
-                                System.out.println(getSelf().path().name() + " assigned to " + philR.path().name());
+                                if (log.isInfoEnabled()) {
+                                    log.info("{} assigned to {}", name, philR.path().name());
+                                }
                                 philR.tell(new PhilosopherMessages.Permit(), self());
                             }
                         }
                     }
                 })
                 .match(ForkMessages.Release.class, msg -> {
-                    System.out.println(getSelf().path().name() + " received release from " + sender().path().name());
+                    if (log.isInfoEnabled()) {
+                        log.info("{} received release from {}", name, sender().path().name());
+                    }
                     if (sender().equals(philL) && lAssign) {
                         leftReq = false;
                         lAssign = false;
                         if (rightReq) {
                             rAssign = true;
-                            System.out.println(getSelf().path().name() + " assigned to " + philR.path().name());
+                            if (log.isInfoEnabled()) {
+                                log.info("{} assigned to {}", name, philR.path().name());
+                            }
                             philR.tell(new PhilosopherMessages.Permit(), self());
                         }
                     } else if (sender().equals(philR) && rAssign) {
@@ -144,7 +213,9 @@ class Fork extends AbstractActor {
                         rAssign = false;
                         if (leftReq) {
                             lAssign = true;
-                            System.out.println(getSelf().path().name() + " assigned to " + philL.path().name());
+                            if (log.isInfoEnabled()) {
+                                log.info("{} assigned to {}", name, philL.path().name());
+                            }
                             philL.tell(new PhilosopherMessages.Permit(), self());
                         }
                     }
@@ -159,26 +230,101 @@ class Fork extends AbstractActor {
 
 // Main Application
 public class DiningPhilosophers {
-    public static void main(String[] args) {
+    // ARBITER: Philosopher asks Fork actors; HYGIENIC: Chandy-Misra, forks passed between philosophers
+    enum Variant { ARBITER, HYGIENIC }
+
+    // Usage: DiningPhilosophers                  (three philosophers, event log on)
+    //        DiningPhilosophers <N> [seconds] [arbiter|hygienic]   (N-philosopher ring, prints meal metrics)
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            EventLog.setEnabled("DinningPhiosepher", false);
+            int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+            Variant variant = Variant.valueOf((args.length > 2 ? args[2] : "arbiter").toUpperCase());
+            report(run(variant, Integer.parseInt(args[0]), seconds), seconds);
+            return;
+        }
         ActorSystem system = ActorSystem.create("DiningPhilosophers");
+        ring(system, 3, null);
+    }
 
-        // Create forks
-        ActorRef fork0 = system.actorOf(Fork.props(null, null), "Fork0");
-        ActorRef fork1 = system.actorOf(Fork.props(null, null), "Fork1");
-        ActorRef fork2 = system.actorOf(Fork.props(null, null), "Fork2");
+    // Fork j lies between Philosopher j and Philosopher j+1 (mod n). Each philosopher requests
+    // its lower-numbered fork first, which breaks the circular wait. For n = 3 this is the
+    // original wiring: Philosopher0 uses Fork0 and Fork2, Philosopher1 Fork0 and Fork1, and so on.
+    // With runFor set, philosophers stop arriving that long after the table is laid.
+    static ActorRef[] ring(ActorSystem system, int n, Duration runFor) {
+        if (n < 2) {
+            throw new IllegalArgumentException("a ring needs at least 2 philosophers");
+        }
+        ActorRef[] forks = new ActorRef[n];
+        for (int j = 0; j < n; j++) {
+            forks[j] = system.actorOf(Fork.props(null, null), "Fork" + j);
+        }
+        ActorRef[] philosophers = new ActorRef[n];
+        for (int i = 0; i < n; i++) {
+            int left = i == 0 ? 0 : i - 1;
+            int right = i == 0 ? n - 1 : i;
+            philosophers[i] = system.actorOf(Philosopher.props(forks[left], forks[right]), "Philosopher" + i);
+        }
+        for (int j = 0; j < n; j++) {
+            forks[j].tell(new ForkMessages.Setup(philosophers[j], philosophers[(j + 1) % n]), ActorRef.noSender());
+            forks[j].tell(new ForkMessages.Initial(), ActorRef.noSender());
+        }
+        PhilosopherMessages.Initial initial = runFor == null ? new PhilosopherMessages.Initial()
+                : new PhilosopherMessages.Initial(System.nanoTime() + runFor.toNanos());
+        for (ActorRef philosopher : philosophers) {
+            philosopher.tell(initial, ActorRef.noSender());
+        }
+        return philosophers;
+    }
 
-        // Create philosophers
-        ActorRef phil0 = system.actorOf(Philosopher.props(fork0, fork2), "Philosopher0");
-        ActorRef phil1 = system.actorOf(Philosopher.props(fork0, fork1), "Philosopher1");
-        ActorRef phil2 = system.actorOf(Philosopher.props(fork1, fork2), "Philosopher2");
+    // Same ring layout as ring(): philosopher i shares fork i-1 with its left neighbour and fork i
+    // with its right one. Each fork starts dirty at the lower-numbered of its two philosophers,
+    // which makes the initial precedence graph acyclic.
+    static ActorRef[] hygienicRing(ActorSystem system, int n, Duration runFor) {
+        if (n < 2) {
+            throw new IllegalArgumentException("a ring needs at least 2 philosophers");
+        }
+        ActorRef[] philosophers = new ActorRef[n];
+        for (int i = 0; i < n; i++) {
+            philosophers[i] = system.actorOf(HygienicPhilosopher.props((i + n - 1) % n, i), "Philosopher" + i);
+        }
+        for (int i = 0; i < n; i++) {
+            int leftFork = (i + n - 1) % n;
+            boolean holdsLeft = Math.min(leftFork, (leftFork + 1) % n) == i;
+            boolean holdsRight = Math.min(i, (i + 1) % n) == i;
+            philosophers[i].tell(new HygienicMessages.Setup(philosophers[(i + n - 1) % n], philosophers[(i + 1) % n],
+                    holdsLeft, holdsRight), ActorRef.noSender());
+        }
+        PhilosopherMessages.Initial initial = runFor == null ? new PhilosopherMessages.Initial()
+                : new PhilosopherMessages.Initial(System.nanoTime() + runFor.toNanos());
+        for (ActorRef philosopher : philosophers) {
+            philosopher.tell(initial, ActorRef.noSender());
+        }
+        return philosophers;
+    }
 
-        // Initialize actors
-        fork0.tell(new ForkMessages.Initial(), ActorRef.noSender());
-        fork1.tell(new ForkMessages.Initial(), ActorRef.noSender());
-        fork2.tell(new ForkMessages.Initial(), ActorRef.noSender());
+    static TableMonitor.TableStats run(Variant variant, int n, int seconds) throws Exception {
+        ActorSystem system = ActorSystem.create("DiningPhilosophers");
+        try {
+            // Philosophers stop on their own: a message from outside can wait a long time to be
+            // picked up while every dispatcher thread is busy with its local fork-join queue
+            Duration runFor = Duration.ofSeconds(seconds);
+            ActorRef[] philosophers = variant == Variant.HYGIENIC ? hygienicRing(system, n, runFor) : ring(system, n, runFor);
+            ActorRef monitor = system.actorOf(TableMonitor.props(philosophers), "tableMonitor");
+            Thread.sleep(seconds * 1000L + 500);
+            return (TableMonitor.TableStats) Patterns.ask(monitor, new TableMonitor.Collect(),
+                    Duration.ofSeconds(60)).toCompletableFuture().get();
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
+        }
+    }
 
-        phil0.tell(new PhilosopherMessages.Initial(), ActorRef.noSender());
-        phil1.tell(new PhilosopherMessages.Initial(), ActorRef.noSender());
-        phil2.tell(new PhilosopherMessages.Initial(), ActorRef.noSender());
+    static void report(TableMonitor.TableStats stats, int seconds) {
+        System.out.printf("%,d philosophers, %ds: meals/s=%,.0f  meals per philosopher min=%,d avg=%,.0f%n",
+                stats.philosophers, seconds, (double) stats.meals / seconds, stats.minMeals,
+                (double) stats.meals / stats.philosophers);
+        System.out.printf("wait %s%n", stats.waits);
+        System.out.printf("max starvation gap %s (%s)%n", LatencyHistogram.format(stats.maxGapNanos), stats.starved);
     }
 }
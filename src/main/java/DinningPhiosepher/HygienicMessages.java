@@ -0,0 +1,34 @@
+package DinningPhiosepher;
+
+import akka.actor.ActorRef;
+
+// Messages for HygienicPhilosopher; forks are named by their ring index
+class HygienicMessages {
+    static class Setup {
+        final ActorRef left;
+        final ActorRef right;
+        final boolean holdsLeft;
+        final boolean holdsRight;
+
+        Setup(ActorRef left, ActorRef right, boolean holdsLeft, boolean holdsRight) {
+            this.left = left;
+            this.right = right;
+            this.holdsLeft = holdsLeft;
+            this.holdsRight = holdsRight;
+        }
+    }
+    static class RequestFork {
+        final int fork;
+
+        RequestFork(int fork) {
+            this.fork = fork;
+        }
+    }
+    static class ForkToken {
+        final int fork;
+
+        ForkToken(int fork) {
+            this.fork = fork;
+        }
+    }
+}
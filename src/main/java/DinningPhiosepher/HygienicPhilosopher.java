@@ -0,0 +1,150 @@
+package DinningPhiosepher;
+
+import Common.EventLog;
+import Common.LatencyHistogram;
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import org.slf4j.Logger;
+
+// Chandy-Misra "hygienic" philosopher: no Fork actors, the fork token itself travels between
+// neighbours. A fork is dirty once eaten with and clean when handed over. A hungry philosopher
+// keeps clean forks but yields dirty ones on request (and asks for them back); requests for a
+// fork it is eating with, or holds clean, are deferred until it has eaten.
+class HygienicPhilosopher extends AbstractActor {
+    private static final Logger log = EventLog.logger(HygienicPhilosopher.class);
+    private static final int LEFT = 0;
+    private static final int RIGHT = 1;
+
+    private final String name = getSelf().path().name();
+    private final int[] forkIds = new int[2];
+    private final ActorRef[] neighbors = new ActorRef[2];
+    private final boolean[] holds = new boolean[2];
+    private final boolean[] dirty = new boolean[2];
+    private final boolean[] requested = new boolean[2];
+    private final boolean[] deferred = new boolean[2];
+    private boolean hungry;
+    private boolean eating;
+
+    // Metrics, as in Philosopher
+    private final LatencyHistogram waits = new LatencyHistogram(0);
+    private long arrivedAt;
+    private long lastMealAt;
+    private long maxGap;
+    private long meals;
+    private long deadline = Long.MAX_VALUE;
+
+    HygienicPhilosopher(int leftFork, int rightFork) {
+        forkIds[LEFT] = leftFork;
+        forkIds[RIGHT] = rightFork;
+    }
+
+    static Props props(int leftFork, int rightFork) {
+        return Props.create(HygienicPhilosopher.class, () -> new HygienicPhilosopher(leftFork, rightFork));
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(HygienicMessages.Setup.class, msg -> {
+                    neighbors[LEFT] = msg.left;
+                    neighbors[RIGHT] = msg.right;
+                    holds[LEFT] = dirty[LEFT] = msg.holdsLeft;
+                    holds[RIGHT] = dirty[RIGHT] = msg.holdsRight;
+                })
+                .match(PhilosopherMessages.Initial.class, msg -> {
+                    lastMealAt = System.nanoTime();
+                    deadline = msg.deadlineNanos;
+                    self().tell(new PhilosopherMessages.Arrive(), self());
+                })
+                .match(PhilosopherMessages.Arrive.class, msg -> {
+                    arrivedAt = System.nanoTime();
+                    if (arrivedAt - deadline >= 0) {
+                        return;
+                    }
+                    hungry = true;
+                    for (int side = LEFT; side <= RIGHT; side++) {
+                        if (!holds[side] && !requested[side]) {
+                            request(side);
+                        }
+                    }
+                    tryEat();
+                })
+                .match(HygienicMessages.RequestFork.class, msg -> {
+                    int side = sideOf(msg.fork);
+                    if (!holds[side]) {
+                        return;
+                    }
+                    if (!eating && (!hungry || dirty[side])) {
+                        give(side);
+                        if (hungry) {
+                            request(side);
+                        }
+                    } else {
+                        deferred[side] = true;
+                    }
+                })
+                .match(HygienicMessages.ForkToken.class, msg -> {
+                    int side = sideOf(msg.fork);
+                    holds[side] = true;
+                    dirty[side] = false;
+                    requested[side] = false;
+                    tryEat();
+                })
+                .match(PhilosopherMessages.Eat.class, msg -> {
+                    long now = System.nanoTime();
+                    if (now - deadline < 0) {
+                        waits.record(now - arrivedAt);
+                        maxGap = Math.max(maxGap, now - lastMealAt);
+                        lastMealAt = now;
+                        meals++;
+                    }
+                    if (log.isInfoEnabled()) {
+                        log.info("{} is eating.", name);
+                    }
+                    self().tell(new PhilosopherMessages.Leave(), self());
+                })
+                .match(PhilosopherMessages.Leave.class, msg -> {
+                    eating = false;
+                    dirty[LEFT] = true;
+                    dirty[RIGHT] = true;
+                    for (int side = LEFT; side <= RIGHT; side++) {
+                        if (deferred[side]) {
+                            deferred[side] = false;
+                            give(side);
+                        }
+                    }
+                    self().tell(new PhilosopherMessages.Arrive(), self());
+                })
+                .match(PhilosopherMessages.GetStats.class, msg -> {
+                    long end = System.nanoTime() - deadline < 0 ? System.nanoTime() : deadline;
+                    long gap = Math.max(maxGap, end - lastMealAt);
+                    sender().tell(new PhilosopherMessages.Stats(meals, gap, waits), self());
+                })
+                .build();
+    }
+
+    private void tryEat() {
+        if (hungry && holds[LEFT] && holds[RIGHT]) {
+            hungry = false;
+            eating = true;
+            self().tell(new PhilosopherMessages.Eat(), self());
+        }
+    }
+
+    private void request(int side) {
+        requested[side] = true;
+        neighbors[side].tell(new HygienicMessages.RequestFork(forkIds[side]), self());
+    }
+
+    private void give(int side) {
+        holds[side] = false;
+        dirty[side] = false;
+        neighbors[side].tell(new HygienicMessages.ForkToken(forkIds[side]), self());
+    }
+
+    // Looked up by fork id rather than sender, since in a ring of two both forks lie between the same pair
+    private int sideOf(int fork) {
+        return forkIds[LEFT] == fork ? LEFT : RIGHT;
+    }
+}
@@ -0,0 +1,30 @@
+package DinningPhiosepher;
+
+import Common.EventLog;
+import Common.LatencyHistogram;
+
+// Fork-arbiter philosophers against Chandy-Misra hygienic ones on the same ring sizes:
+// meals/sec, tail wait from Arrive to Eat, and the longest gap between two meals.
+// Usage: PhilosopherBenchmark [sizes, e.g. 3,100,10000] [seconds]
+public class PhilosopherBenchmark {
+    public static void main(String[] args) throws Exception {
+        String[] sizes = (args.length > 0 ? args[0] : "3,100,10000").split(",");
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        EventLog.setEnabled("DinningPhiosepher", false);
+
+        System.out.printf("%-9s %8s %12s %10s %10s %10s %10s %12s%n",
+                "variant", "N", "meals/s", "min meals", "p50", "p99", "p999", "max gap");
+        for (String size : sizes) {
+            int n = Integer.parseInt(size);
+            for (DiningPhilosophers.Variant variant : DiningPhilosophers.Variant.values()) {
+                TableMonitor.TableStats stats = DiningPhilosophers.run(variant, n, seconds);
+                System.out.printf("%-9s %,8d %,12.0f %,10d %10s %10s %10s %12s%n",
+                        variant.name().toLowerCase(), n, (double) stats.meals / seconds, stats.minMeals,
+                        LatencyHistogram.format(stats.waits.percentile(50)),
+                        LatencyHistogram.format(stats.waits.percentile(99)),
+                        LatencyHistogram.format(stats.waits.percentile(99.9)),
+                        LatencyHistogram.format(stats.maxGapNanos));
+            }
+        }
+    }
+}
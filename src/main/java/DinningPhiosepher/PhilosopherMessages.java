@@ -0,0 +1,35 @@
+package DinningPhiosepher;
+
+import Common.LatencyHistogram;
+
+// Messages for Philosopher
+class PhilosopherMessages {
+    static class Initial {
+        final long deadlineNanos;
+
+        Initial() {
+            this(Long.MAX_VALUE);
+        }
+
+        // Stop arriving at the table once System.nanoTime() passes deadlineNanos
+        Initial(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+    static class Arrive {}
+    static class Permit {}
+    static class Eat {}
+    static class Leave {}
+    static class GetStats {}
+    static class Stats {
+        final long meals;
+        final long maxGapNanos;
+        final LatencyHistogram waits;
+
+        Stats(long meals, long maxGapNanos, LatencyHistogram waits) {
+            this.meals = meals;
+            this.maxGapNanos = maxGapNanos;
+            this.waits = waits;
+        }
+    }
+}
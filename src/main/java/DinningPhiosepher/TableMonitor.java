@@ -0,0 +1,78 @@
+package DinningPhiosepher;
+
+import Common.LatencyHistogram;
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+
+// Gathers Stats from every philosopher and answers the requester with the whole table
+class TableMonitor extends AbstractActor {
+    private final ActorRef[] philosophers;
+    private ActorRef requester;
+    private int replies;
+    private long meals;
+    private long minMeals;
+    private long maxGap;
+    private String starved;
+    private LatencyHistogram waits;
+
+    TableMonitor(ActorRef[] philosophers) {
+        this.philosophers = philosophers;
+    }
+
+    static Props props(ActorRef[] philosophers) {
+        return Props.create(TableMonitor.class, () -> new TableMonitor(philosophers));
+    }
+
+    static class Collect {}
+
+    static class TableStats {
+        final int philosophers;
+        final long meals;
+        final long minMeals;
+        final long maxGapNanos;
+        final String starved;
+        final LatencyHistogram waits;
+
+        TableStats(int philosophers, long meals, long minMeals, long maxGapNanos, String starved,
+                   LatencyHistogram waits) {
+            this.philosophers = philosophers;
+            this.meals = meals;
+            this.minMeals = minMeals;
+            this.maxGapNanos = maxGapNanos;
+            this.starved = starved;
+            this.waits = waits;
+        }
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Collect.class, msg -> {
+                    requester = sender();
+                    replies = 0;
+                    meals = 0;
+                    minMeals = Long.MAX_VALUE;
+                    maxGap = -1;
+                    waits = new LatencyHistogram(0);
+                    PhilosopherMessages.GetStats get = new PhilosopherMessages.GetStats();
+                    for (ActorRef philosopher : philosophers) {
+                        philosopher.tell(get, self());
+                    }
+                })
+                .match(PhilosopherMessages.Stats.class, msg -> {
+                    meals += msg.meals;
+                    minMeals = Math.min(minMeals, msg.meals);
+                    if (msg.maxGapNanos > maxGap) {
+                        maxGap = msg.maxGapNanos;
+                        starved = sender().path().name();
+                    }
+                    waits.merge(msg.waits);
+                    if (++replies == philosophers.length) {
+                        requester.tell(new TableStats(philosophers.length, meals, minMeals, maxGap, starved, waits),
+                                self());
+                    }
+                })
+                .build();
+    }
+}
@@ -0,0 +1,62 @@
+package LeaderElection;
+
+import Common.ElectionResult;
+import Common.RingIds;
+import akka.actor.ActorSystem;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+// Runs Hirschberg-Sinclair and LCR on the same ID permutations and reports messages,
+// bytes allocated and time to elect.
+// Usage: ElectionBenchmark [sizes, e.g. 1000,10000,100000] [orders, e.g. random,ascending,descending] [seed]
+public class ElectionBenchmark {
+    public static void main(String[] args) throws Exception {
+        String[] sizes = (args.length > 0 ? args[0] : "1000,10000,100000").split(",");
+        String[] orders = (args.length > 1 ? args[1] : "random,ascending,descending").split(",");
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+
+        System.out.printf("%-4s %9s %-10s %12s %10s %12s %12s%n",
+                "alg", "nodes", "order", "messages", "msg/node", "MB alloc", "elect ms");
+        for (String size : sizes) {
+            int n = Integer.parseInt(size);
+            for (String order : orders) {
+                int[] ids = RingIds.generate(n, RingIds.Order.valueOf(order.toUpperCase()), seed);
+                run("HS", ids, order, LeaderElectionHS.Node::elect);
+                run("LCR", ids, order, LeaderElectionLCR.Node::elect);
+            }
+        }
+    }
+
+    private static void run(String algorithm, int[] ids, String order,
+                            BiFunction<ActorSystem, int[], CompletionStage<ElectionResult>> elect) throws Exception {
+        System.gc();
+        ActorSystem system = ActorSystem.create("ElectionBenchmark");
+        try {
+            long allocatedBefore = allocatedBytes();
+            ElectionResult result = elect.apply(system, ids).toCompletableFuture().get();
+            long allocated = allocatedBytes() - allocatedBefore;
+            System.out.printf("%-4s %9d %-10s %,12d %10.1f %,12.1f %,12.1f%n",
+                    algorithm, ids.length, order, result.messages, (double) result.messages / ids.length,
+                    allocated / 1e6, result.electionNanos / 1e6);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    // Sum over live threads; dispatcher threads outlive the run, so nothing is lost to exiting threads
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+}
@@ -1,20 +1,32 @@
 package LeaderElectionHS;
 
+import Common.ElectionResult;
+import Common.RingIds;
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
 public class Node extends AbstractActor {
 
     // Message classes
     public static class Setup {
         private final ActorRef nodeL;
         private final ActorRef nodeR;
+        private final ActorRef electionMonitor;
 
         public Setup(ActorRef nodeL, ActorRef nodeR) {
+            this(nodeL, nodeR, null);
+        }
+
+        public Setup(ActorRef nodeL, ActorRef nodeR, ActorRef electionMonitor) {
             this.nodeL = nodeL;
             this.nodeR = nodeR;
+            this.electionMonitor = electionMonitor;
         }
 
         public ActorRef getNodeL() {
@@ -24,6 +36,10 @@ public class Node extends AbstractActor {
         public ActorRef getNodeR() {
             return nodeR;
         }
+
+        public ActorRef getElectionMonitor() {
+            return electionMonitor;
+        }
     }
 
     public static class Initial {
@@ -64,15 +80,83 @@ public class Node extends AbstractActor {
         }
     }
 
+    // Leader announcement and termination wave: circulated rightwards, summing each node's sent
+    // and received Receive messages. The leader repeats it until two waves in a row return the
+    // same totals with nothing in flight; only then is the count final.
+    public static class Terminate {
+        private final int leader;
+        private final long sent;
+        private final long receives;
+
+        public Terminate(int leader, long sent, long receives) {
+            this.leader = leader;
+            this.sent = sent;
+            this.receives = receives;
+        }
+
+        public int getLeader() {
+            return leader;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        public long getReceives() {
+            return receives;
+        }
+    }
+
+    // Sent round the ring by the leader once quiet; each node passes it on and stops
+    public static class Stop {
+        private final long receives;
+
+        public Stop(long receives) {
+            this.receives = receives;
+        }
+
+        public long getReceives() {
+            return receives;
+        }
+    }
+
+    // Reports to the election monitor
+    public static class Elected {
+        private final int leader;
+        private final long atNanos;
+
+        public Elected(int leader, long atNanos) {
+            this.leader = leader;
+            this.atNanos = atNanos;
+        }
+    }
+
+    public static class Finished {
+        private final long receives;
+
+        public Finished(long receives) {
+            this.receives = receives;
+        }
+    }
+
     // Actor state
     private ActorRef nodeL;
     private ActorRef nodeR;
+    private ActorRef electionMonitor;
     private boolean monitor;
     private int myId;
     private int phase;
-    private int monitorId;
+    // Probes can arrive before our own Initial; until then relay everything
+    private int monitorId = Integer.MAX_VALUE;
     private boolean receivedLeft;
     private boolean receivedRight;
+    private int ownProbesBack;
+    private int leaderId;
+    private long sent;
+    private long receives;
+    // Leader only: totals of the previous wave
+    private long waveSent = -1;
+    private long waveReceives = -1;
 
     public static Props props() {
         return Props.create(Node.class);
@@ -85,109 +169,191 @@ public class Node extends AbstractActor {
                 .match(Initial.class, this::handleInitial)
                 .match(Arrive.class, this::handleArrive)
                 .match(Receive.class, this::handleReceive)
+                .match(Terminate.class, this::handleTerminate)
+                .match(Stop.class, this::handleStop)
                 .build();
     }
 
     private void handleSetup(Setup setup) {
         nodeL = setup.getNodeL();
         nodeR = setup.getNodeR();
+        electionMonitor = setup.getElectionMonitor();
     }
 
     private void handleInitial(Initial initial) {
         myId = initial.getId();
         monitor = false;
-        monitorId = myId;
+        monitorId = Math.min(monitorId, myId);
         phase = 1;
         receivedLeft = false;
         receivedRight = false;
+        ownProbesBack = 0;
+        leaderId = 0;
         getSelf().tell(new Arrive(), getSelf());
     }
 
     private void handleArrive(Arrive arrive) {
-        nodeL.tell(new Receive(myId, true, phase), getSelf());
-        nodeR.tell(new Receive(myId, true, phase), getSelf());
+        probe();
+    }
+
+    private void probe() {
+        Receive probe = new Receive(myId, true, phase);
+        nodeL.tell(probe, getSelf());
+        nodeR.tell(probe, getSelf());
+        sent += 2;
     }
 
+    // Hirschberg-Sinclair with the smallest ID winning: in phase k each candidate probes 2^k hops
+    // both ways; a probe outlives every node it passes only if it carries the smallest ID seen there.
     private void handleReceive(Receive receive) {
+        receives++;
         int msgId = receive.getMsgId();
         boolean inOut = receive.isInOut();
         int hopCount = receive.getHopCount();
-        ActorRef sender = getSender();
-
-        if (sender.equals(nodeL) && inOut) {
-            if (msgId <= monitorId && hopCount > 1) {
-                monitorId = msgId;
-                nodeR.tell(new Receive(msgId, true, hopCount - 1), getSelf());
-            } else if (msgId <= monitorId && hopCount == 1) {
+        boolean fromLeft = getSender().equals(nodeL);
+        ActorRef back = fromLeft ? nodeL : nodeR;
+        ActorRef onward = fromLeft ? nodeR : nodeL;
+
+        if (inOut) {
+            if (msgId == myId) {
+                // Our probe went all the way round; wait for both directions so no probe of ours is left in flight
+                if (++ownProbesBack == 2) {
+                    becomeLeader();
+                }
+            } else if (msgId <= monitorId) {
                 monitorId = msgId;
-                nodeL.tell(new Receive(msgId, false, 1), getSelf());
-            } else if (msgId == myId) {
-                monitor = true;
-                monitorId = myId;
+                if (hopCount > 1) {
+                    onward.tell(new Receive(msgId, true, hopCount - 1), getSelf());
+                } else {
+                    back.tell(new Receive(msgId, false, 1), getSelf());
+                }
+                sent++;
             }
+            return;
         }
 
-        if (sender.equals(nodeR) && inOut) {
-            if (msgId <= monitorId && hopCount > 1) {
-                monitorId = msgId;
-                nodeL.tell(new Receive(msgId, true, hopCount - 1), getSelf());
-            } else if (msgId <= monitorId && hopCount == 1) {
-                monitorId = msgId;
-                nodeR.tell(new Receive(msgId, false, 1), getSelf());
-            } else if (msgId == myId) {
-                monitor = true;
-                monitorId = myId;
-            }
+        if (msgId != myId) {
+            onward.tell(receive, getSelf());
+            sent++;
+            return;
         }
 
-        if (sender.equals(nodeL) && !inOut && msgId != myId) {
-            nodeR.tell(new Receive(msgId, false, 1), getSelf());
+        if (fromLeft) {
+            receivedLeft = true;
+        } else {
+            receivedRight = true;
         }
-
-        if (sender.equals(nodeR) && !inOut && msgId != myId) {
-            nodeL.tell(new Receive(msgId, false, 1), getSelf());
+        if (receivedLeft && receivedRight && !monitor) {
+            phase *= 2;
+            receivedLeft = false;
+            receivedRight = false;
+            probe();
         }
+    }
 
-        if (sender.equals(nodeL) && !inOut && msgId == myId && hopCount == 1) {
-            receivedLeft = true;
+    private void becomeLeader() {
+        monitor = true;
+        leaderId = myId;
+        if (electionMonitor != null) {
+            electionMonitor.tell(new Elected(myId, System.nanoTime()), getSelf());
         }
+        nodeR.tell(new Terminate(myId, 0, 0), getSelf());
+    }
 
-        if (sender.equals(nodeR) && !inOut && msgId == myId && hopCount == 1) {
-            receivedRight = true;
+    // Replies of losing candidates may still be travelling left when the first wave goes round.
+    // Counters only grow, so two equal waves mean every node was idle from the end of the first
+    // to its visit by the second, and sent == received means nothing was in flight then either.
+    private void handleTerminate(Terminate terminate) {
+        if (terminate.getLeader() != myId) {
+            leaderId = terminate.getLeader();
+            nodeR.tell(new Terminate(leaderId, terminate.getSent() + sent, terminate.getReceives() + receives),
+                    getSelf());
+            return;
         }
+        long totalSent = terminate.getSent() + sent;
+        long totalReceives = terminate.getReceives() + receives;
+        if (totalSent == totalReceives && totalSent == waveSent && totalReceives == waveReceives) {
+            nodeR.tell(new Stop(totalReceives), getSelf());
+        } else {
+            waveSent = totalSent;
+            waveReceives = totalReceives;
+            nodeR.tell(new Terminate(myId, 0, 0), getSelf());
+        }
+    }
 
-        if (receivedLeft && receivedRight && phase < 3) {
-            if (phase == 2) {
-                monitor = true;
-            } else {
-                phase *= 2;
-                receivedLeft = false;
-                receivedRight = false;
-                nodeL.tell(new Receive(myId, true, phase), getSelf());
-                nodeR.tell(new Receive(myId, true, phase), getSelf());
+    private void handleStop(Stop stop) {
+        if (monitor) {
+            if (electionMonitor != null) {
+                electionMonitor.tell(new Finished(stop.getReceives()), getSelf());
             }
+        } else {
+            nodeR.tell(stop, getSelf());
         }
+        getContext().stop(getSelf());
     }
 
-    public static void main(String[] args) {
-        ActorSystem system = ActorSystem.create("NodeSystem");
+    static class Monitor extends AbstractActor {
+        private final long startNanos;
+        private final CompletableFuture<ElectionResult> result;
+        private int leader;
+        private long electedAt;
 
-        // Create nodes
-        ActorRef node1 = system.actorOf(Node.props(), "node1");
-        ActorRef node2 = system.actorOf(Node.props(), "node2");
-        ActorRef node3 = system.actorOf(Node.props(), "node3");
-        ActorRef node4 = system.actorOf(Node.props(), "node4");
-
-        // Setup node connections
-        node1.tell(new Setup(node4, node2), ActorRef.noSender());
-        node2.tell(new Setup(node1, node3), ActorRef.noSender());
-        node3.tell(new Setup(node2, node4), ActorRef.noSender());
-        node4.tell(new Setup(node3, node1), ActorRef.noSender());
-
-        // Initialize nodes
-        node1.tell(new Initial(1), ActorRef.noSender());
-        node2.tell(new Initial(2), ActorRef.noSender());
-        node3.tell(new Initial(3), ActorRef.noSender());
-        node4.tell(new Initial(4), ActorRef.noSender());
-    }
-}
\ No newline at end of file
+        Monitor(long startNanos, CompletableFuture<ElectionResult> result) {
+            this.startNanos = startNanos;
+            this.result = result;
+        }
+
+        @Override
+        public AbstractActor.Receive createReceive() {
+            return receiveBuilder()
+                    .match(Elected.class, msg -> {
+                        leader = msg.leader;
+                        electedAt = msg.atNanos;
+                    })
+                    .match(Finished.class, msg -> {
+                        result.complete(new ElectionResult(leader, msg.receives, electedAt - startNanos,
+                                System.nanoTime() - startNanos));
+                        getContext().stop(getSelf());
+                    })
+                    .build();
+        }
+    }
+
+    // Builds a ring where ids[i] has ids[i - 1] on its left and ids[i + 1] on its right (n >= 3)
+    public static CompletionStage<ElectionResult> elect(ActorSystem system, int[] ids) {
+        int n = ids.length;
+        if (n < 3) {
+            throw new IllegalArgumentException("neighbours are told apart by sender, so the ring needs 3+ nodes");
+        }
+        CompletableFuture<ElectionResult> result = new CompletableFuture<>();
+        ActorRef[] nodes = new ActorRef[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = system.actorOf(Node.props(), "hs" + i);
+        }
+        long start = System.nanoTime();
+        ActorRef monitor = system.actorOf(Props.create(Monitor.class, () -> new Monitor(start, result)));
+        for (int i = 0; i < n; i++) {
+            nodes[i].tell(new Setup(nodes[(i + n - 1) % n], nodes[(i + 1) % n], monitor), ActorRef.noSender());
+        }
+        for (int i = 0; i < n; i++) {
+            nodes[i].tell(new Initial(ids[i]), ActorRef.noSender());
+        }
+        return result;
+    }
+
+    // Usage: Node [nodes] [random|ascending|descending] [seed]; no arguments runs Rebeca's 4-node ring
+    public static void main(String[] args) throws Exception {
+        int[] ids = args.length == 0
+                ? new int[]{1, 2, 3, 4}
+                : RingIds.generate(Integer.parseInt(args[0]),
+                        args.length > 1 ? RingIds.Order.valueOf(args[1].toUpperCase()) : RingIds.Order.RANDOM,
+                        args.length > 2 ? Long.parseLong(args[2]) : 1L);
+
+        ActorSystem system = ActorSystem.create("NodeSystem");
+        ElectionResult result = elect(system, ids).toCompletableFuture().get();
+        System.out.printf("nodes=%d leader=%d receives=%d election=%.1f ms total=%.1f ms%n",
+                ids.length, result.leader, result.messages, result.electionNanos / 1e6, result.totalNanos / 1e6);
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+}
@@ -1,23 +1,39 @@
 package LeaderElectionLCR;
 
+import Common.ElectionResult;
+import Common.RingIds;
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
 public class Node extends AbstractActor {
 
     // Message classes
     public static class Setup {
         private final ActorRef rightNode;
+        private final ActorRef monitor;
 
         public Setup(ActorRef rightNode) {
+            this(rightNode, null);
+        }
+
+        public Setup(ActorRef rightNode, ActorRef monitor) {
             this.rightNode = rightNode;
+            this.monitor = monitor;
         }
 
         public ActorRef getRightNode() {
             return rightNode;
         }
+
+        public ActorRef getMonitor() {
+            return monitor;
+        }
     }
 
     public static class Initial {
@@ -48,11 +64,51 @@ public class Node extends AbstractActor {
 
     public static class ImLeader {}
 
+    // Circulated once by the leader; every node adds its Receive count, passes it on and stops
+    public static class Terminate {
+        private final int leader;
+        private final long receives;
+
+        public Terminate(int leader, long receives) {
+            this.leader = leader;
+            this.receives = receives;
+        }
+
+        public int getLeader() {
+            return leader;
+        }
+
+        public long getReceives() {
+            return receives;
+        }
+    }
+
+    // Reports to the monitor
+    public static class Elected {
+        private final int leader;
+        private final long atNanos;
+
+        public Elected(int leader, long atNanos) {
+            this.leader = leader;
+            this.atNanos = atNanos;
+        }
+    }
+
+    public static class Finished {
+        private final long receives;
+
+        public Finished(long receives) {
+            this.receives = receives;
+        }
+    }
+
     // Actor state
     private ActorRef rightNode;
+    private ActorRef monitor;
     private boolean isLeader;
     private int myNumber;
     private int currentLeader;
+    private long receives;
 
     public static Props props() {
         return Props.create(Node.class);
@@ -66,11 +122,13 @@ public class Node extends AbstractActor {
                 .match(Send.class, this::handleSend)
                 .match(Receive.class, this::handleReceive)
                 .match(ImLeader.class, this::handleImLeader)
+                .match(Terminate.class, this::handleTerminate)
                 .build();
     }
 
     private void handleSetup(Setup setup) {
         rightNode = setup.getRightNode();
+        monitor = setup.getMonitor();
     }
 
     private void handleInitial(Initial initial) {
@@ -85,10 +143,14 @@ public class Node extends AbstractActor {
     }
 
     private void handleReceive(Receive receive) {
+        receives++;
         int n = receive.getN();
         if (n == myNumber) {
-            isLeader = true;
-            getSelf().tell(new ImLeader(), getSelf());
+            // Our number can come round twice when two Sends were queued upstream; elect once
+            if (!isLeader) {
+                isLeader = true;
+                getSelf().tell(new ImLeader(), getSelf());
+            }
         } else if (n > currentLeader) {
             currentLeader = n;
             getSelf().tell(new Send(), getSelf());
@@ -97,26 +159,84 @@ public class Node extends AbstractActor {
     }
 
     private void handleImLeader(ImLeader imLeader) {
-        // Keep sending ImLeader to avoid termination
-        getSelf().tell(new ImLeader(), getSelf());
+        if (monitor != null) {
+            monitor.tell(new Elected(myNumber, System.nanoTime()), getSelf());
+        }
+        // Links are FIFO, so the token reaches each node after every Receive still headed its way
+        rightNode.tell(new Terminate(myNumber, receives), getSelf());
     }
 
-    public static void main(String[] args) {
-        ActorSystem system = ActorSystem.create("LeaderElectionSystem");
+    private void handleTerminate(Terminate terminate) {
+        if (isLeader) {
+            if (monitor != null) {
+                monitor.tell(new Finished(terminate.getReceives()), getSelf());
+            }
+        } else {
+            rightNode.tell(new Terminate(terminate.getLeader(), terminate.getReceives() + receives), getSelf());
+        }
+        getContext().stop(getSelf());
+    }
+
+    // Collects the leader's reports and completes the election future
+    static class Monitor extends AbstractActor {
+        private final long startNanos;
+        private final CompletableFuture<ElectionResult> result;
+        private int leader;
+        private long electedAt;
+
+        Monitor(long startNanos, CompletableFuture<ElectionResult> result) {
+            this.startNanos = startNanos;
+            this.result = result;
+        }
 
-        // Create nodes
-        ActorRef node0 = system.actorOf(Node.props(), "node0");
-        ActorRef node1 = system.actorOf(Node.props(), "node1");
-        ActorRef node2 = system.actorOf(Node.props(), "node2");
+        @Override
+        public AbstractActor.Receive createReceive() {
+            return receiveBuilder()
+                    .match(Elected.class, msg -> {
+                        leader = msg.leader;
+                        electedAt = msg.atNanos;
+                    })
+                    .match(Finished.class, msg -> {
+                        result.complete(new ElectionResult(leader, msg.receives, electedAt - startNanos,
+                                System.nanoTime() - startNanos));
+                        getContext().stop(getSelf());
+                    })
+                    .build();
+        }
+    }
 
-        // Setup node connections
-        node0.tell(new Setup(node2), ActorRef.noSender());
-        node1.tell(new Setup(node0), ActorRef.noSender());
-        node2.tell(new Setup(node1), ActorRef.noSender());
+    // Builds a ring where ids[i] sends to ids[i + 1] and runs one election on it
+    public static CompletionStage<ElectionResult> elect(ActorSystem system, int[] ids) {
+        int n = ids.length;
+        CompletableFuture<ElectionResult> result = new CompletableFuture<>();
+        ActorRef[] nodes = new ActorRef[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = system.actorOf(Node.props(), "lcr" + i);
+        }
+        long start = System.nanoTime();
+        ActorRef monitor = system.actorOf(Props.create(Monitor.class, () -> new Monitor(start, result)));
+        for (int i = 0; i < n; i++) {
+            nodes[i].tell(new Setup(nodes[(i + 1) % n], monitor), ActorRef.noSender());
+        }
+        for (int i = 0; i < n; i++) {
+            nodes[i].tell(new Initial(ids[i]), ActorRef.noSender());
+        }
+        return result;
+    }
 
-        // Initialize nodes with their numbers
-        node0.tell(new Initial(4), ActorRef.noSender());
-        node1.tell(new Initial(20), ActorRef.noSender());
-        node2.tell(new Initial(10), ActorRef.noSender());
+    // Usage: Node [nodes] [random|ascending|descending] [seed]; no arguments runs Rebeca's 3-node ring
+    public static void main(String[] args) throws Exception {
+        int[] ids = args.length == 0
+                ? new int[]{4, 10, 20}
+                : RingIds.generate(Integer.parseInt(args[0]),
+                        args.length > 1 ? RingIds.Order.valueOf(args[1].toUpperCase()) : RingIds.Order.RANDOM,
+                        args.length > 2 ? Long.parseLong(args[2]) : 1L);
+
+        ActorSystem system = ActorSystem.create("LeaderElectionSystem");
+        ElectionResult result = elect(system, ids).toCompletableFuture().get();
+        System.out.printf("nodes=%d leader=%d receives=%d election=%.1f ms total=%.1f ms%n",
+                ids.length, result.leader, result.messages, result.electionNanos / 1e6, result.totalNanos / 1e6);
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,118 @@
+package MicroService;
+
+import Common.LatencyHistogram;
+
+import java.time.Duration;
+
+// OrderService-side view of stock levels, used to answer CheckAvailability without asking the
+// inventory shard when the answer is clearly yes. Direct-mapped over primitive arrays: a product
+// lives in one slot and a colliding product evicts it. Shards push every change at a fixed
+// interval, so a cached level is current as of the time its shard sent the last push; it is
+// trusted only if that is less than maxStaleness ago and the level leaves safetyMargin units
+// after the order. Anything else is a miss and goes to the authoritative
+// shard. A hit is not re-checked there: if other buyers took more than the margin since the
+// push, the order oversells, and OrderService counts those units with recordHitOversold.
+// One instance per actor, fed by that actor's StockUpdate subscription; not thread-safe, and
+// not for pool routees, which would each see only some of the pushes.
+final class AvailabilityCache {
+
+    static final class Policy {
+        final int capacity;
+        final long maxStalenessNanos;
+        final int safetyMargin;
+
+        Policy(int capacity, Duration maxStaleness, int safetyMargin) {
+            if (capacity < 1 || safetyMargin < 0) {
+                throw new IllegalArgumentException("capacity must be positive and safetyMargin non-negative");
+            }
+            this.capacity = capacity;
+            this.maxStalenessNanos = maxStaleness.toNanos();
+            this.safetyMargin = safetyMargin;
+        }
+    }
+
+    private final Policy policy;
+    private final int mask;
+    private final int[] products;
+    private final int[] stock;
+    private final boolean[] used;
+    private final long[] shardPushNanos;
+
+    private long hits;
+    private long absent;
+    private long stale;
+    private long nearThreshold;
+    private long hitOversold;
+    private final LatencyHistogram hitLatency = new LatencyHistogram();
+    private final LatencyHistogram missLatency = new LatencyHistogram();
+
+    AvailabilityCache(Policy policy, int shards) {
+        this.policy = policy;
+        int capacity = Integer.highestOneBit(Math.max(1, policy.capacity - 1)) << 1;
+        this.mask = capacity - 1;
+        this.products = new int[capacity];
+        this.stock = new int[capacity];
+        this.used = new boolean[capacity];
+        this.shardPushNanos = new long[shards];
+    }
+
+    private int slot(int product) {
+        return (product * 0x9E3779B9 >>> 7) & mask;
+    }
+
+    // True when the cached level is fresh and covers qty with the margin to spare; the cached
+    // level is then lowered by qty so a burst of hits cannot run through the margin unseen
+    boolean clearlyAvailable(int product, int shard, int qty, long now) {
+        int slot = slot(product);
+        if (!used[slot] || products[slot] != product) {
+            absent++;
+            return false;
+        }
+        if (now - shardPushNanos[shard] > policy.maxStalenessNanos) {
+            stale++;
+            return false;
+        }
+        if (stock[slot] - qty < policy.safetyMargin) {
+            nearThreshold++;
+            return false;
+        }
+        stock[slot] -= qty;
+        hits++;
+        return true;
+    }
+
+    // An authoritative level, from a shard reply: always cached. Later changes to it arrive
+    // in the shard's pushes, which come in order after this reply
+    void put(int product, int level) {
+        int slot = slot(product);
+        products[slot] = product;
+        stock[slot] = level;
+        used[slot] = true;
+    }
+
+    // A pushed level: refreshes the product only if it is cached, so pushes do not evict
+    void refresh(int product, int level) {
+        int slot = slot(product);
+        if (used[slot] && products[slot] == product) {
+            stock[slot] = level;
+        }
+    }
+
+    // Everything the shard changed up to sentNanos has been applied
+    void shardPushed(int shard, long sentNanos) {
+        shardPushNanos[shard] = sentNanos;
+    }
+
+    void recordHitOversold(int units) {
+        hitOversold += units;
+    }
+
+    void recordCheck(boolean hit, long nanos) {
+        (hit ? hitLatency : missLatency).record(nanos);
+    }
+
+    ECommerceSystem.CacheStats stats() {
+        return new ECommerceSystem.CacheStats(hits, absent, stale, nearThreshold, hitOversold, hitLatency,
+                missLatency);
+    }
+}
@@ -0,0 +1,93 @@
+package MicroService;
+
+import Common.LatencyHistogram;
+import MicroService.ECommerceSystem.CacheStats;
+import MicroService.ECommerceSystem.Flow;
+import MicroService.ECommerceSystem.InventoryStats;
+import MicroService.ECommerceSystem.OrderStats;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.pattern.Patterns;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// The two-step order flow with and without an AvailabilityCache at OrderService: hit rate,
+// availability-check latency (PlaceOrder until the check is answered, locally or by the
+// shard), end-to-end order latency, and over the whole run units oversold and how many of those
+// were confirmed on a cache hit.
+// Usage: AvailabilityCacheBenchmark [catalogSize] [customers] [seconds] [stock] [maxStalenessMs]
+//                                   [safetyMargin] [cacheCapacity]
+public class AvailabilityCacheBenchmark {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    public static void main(String[] args) throws Exception {
+        int catalogSize = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int customers = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int stock = args.length > 3 ? Integer.parseInt(args[3]) : 1_000_000;
+        int stalenessMs = args.length > 4 ? Integer.parseInt(args[4]) : 50;
+        int margin = args.length > 5 ? Integer.parseInt(args[5]) : 100;
+        int capacity = args.length > 6 ? Integer.parseInt(args[6]) : 1 << 16;
+
+        System.out.printf("%,d SKUs x %,d stock, %,d customers, staleness %dms, margin %d, %,d slots%n",
+                catalogSize, stock, customers, stalenessMs, margin, capacity);
+        System.out.printf("%6s %10s %8s %10s %10s %10s %10s %10s %10s %9s %9s%n", "cache", "orders/s", "hits",
+                "hit p50", "miss p50", "miss p99", "order p50", "order p99", "stale", "oversold", "on hits");
+        run(null, catalogSize, customers, seconds, stock);
+        run(new AvailabilityCache.Policy(capacity, Duration.ofMillis(stalenessMs), margin), catalogSize, customers,
+                seconds, stock);
+    }
+
+    private static void run(AvailabilityCache.Policy policy, int catalogSize, int customers, int seconds, int stock)
+            throws Exception {
+        ActorSystem system = ActorSystem.create("AvailabilityCache",
+                ConfigFactory.parseString("akka.scheduler.tick-duration = 1ms").withFallback(ConfigFactory.load()));
+        try {
+            ConsistentHashRing ring = new ConsistentHashRing(4, 128);
+            ActorRef[] shards = ECommerceSystem.inventoryShards(system, ring, catalogSize, stock);
+            ActorRef shipping = system.actorOf(Props.create(ECommerceSystem.ShippingService.class), "shipping");
+            ActorRef orderService = system.actorOf(
+                    ECommerceSystem.OrderService.props(shards, ring, shipping, Flow.TWO_STEP, policy), "order");
+            LatencyHistogram latency = new LatencyHistogram();
+            for (int i = 0; i < customers; i++) {
+                system.actorOf(ECommerceSystem.Customer.props(i, orderService, catalogSize, 1, latency),
+                        "customer" + i);
+            }
+
+            Thread.sleep(1000);
+            CacheStats cacheBefore = (CacheStats) ask(orderService, new ECommerceSystem.GetCacheStats());
+            cacheBefore.hitLatency.reset();
+            cacheBefore.missLatency.reset();
+            latency.reset();
+            OrderStats before = ECommerceSystem.orderStats(orderService);
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            OrderStats after = ECommerceSystem.orderStats(orderService);
+            CacheStats cache = (CacheStats) ask(orderService, new ECommerceSystem.GetCacheStats());
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            long oversold = 0;
+            for (ActorRef shard : shards) {
+                oversold += ((InventoryStats) ask(shard, new ECommerceSystem.GetInventoryStats())).oversold;
+            }
+            long checks = cache.checks() - cacheBefore.checks();
+            System.out.printf("%6s %,10.0f %7.1f%% %10s %10s %10s %10s %10s %,10d %,9d %,9d%n", policy == null ? "off" : "on",
+                    (after.delivered - before.delivered) / elapsed,
+                    100.0 * (cache.hits - cacheBefore.hits) / Math.max(1, checks),
+                    LatencyHistogram.format(cache.hitLatency.percentile(50)),
+                    LatencyHistogram.format(cache.missLatency.percentile(50)),
+                    LatencyHistogram.format(cache.missLatency.percentile(99)),
+                    LatencyHistogram.format(latency.percentile(50)), LatencyHistogram.format(latency.percentile(99)),
+                    cache.stale - cacheBefore.stale, oversold, cache.hitOversold);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Object ask(ActorRef actor, Object message) throws Exception {
+        return Patterns.ask(actor, message, TIMEOUT).toCompletableFuture().get();
+    }
+}
@@ -0,0 +1,76 @@
+package MicroService;
+
+import java.util.Arrays;
+
+// Maps product IDs to shard indexes. Each shard owns `virtualNodes` points on a 64-bit hash
+// ring and a product belongs to the first point at or after its own hash, so adding a shard
+// moves only ~1/n of the catalog. Points live in one sorted long[] with a parallel owner
+// array; lookup is a binary search. Immutable, so one instance can be shared by any actor.
+public class ConsistentHashRing {
+    private final long[] points;
+    private final int[] owners;
+    private final int shards;
+
+    public ConsistentHashRing(int shards, int virtualNodes) {
+        if (shards < 1 || virtualNodes < 1) {
+            throw new IllegalArgumentException("shards and virtualNodes must be at least 1");
+        }
+        this.shards = shards;
+        int n = shards * virtualNodes;
+        long[] hashes = new long[n];
+        for (int i = 0; i < n; i++) {
+            hashes[i] = mix(0x5DEECE66DL + i);
+        }
+        // Sort points and carry their owners along by sorting indexes keyed on hash
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        this.points = new long[n];
+        this.owners = new int[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = order[i] / virtualNodes;
+        }
+    }
+
+    public int shards() {
+        return shards;
+    }
+
+    public int shardOf(int product) {
+        long hash = mix(product);
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    // The products of [0, catalogSize) owned by each shard, ascending
+    public int[][] partition(int catalogSize) {
+        int[] counts = new int[shards];
+        int[] owner = new int[catalogSize];
+        for (int product = 0; product < catalogSize; product++) {
+            owner[product] = shardOf(product);
+            counts[owner[product]]++;
+        }
+        int[][] skus = new int[shards][];
+        for (int shard = 0; shard < shards; shard++) {
+            skus[shard] = new int[counts[shard]];
+            counts[shard] = 0;
+        }
+        for (int product = 0; product < catalogSize; product++) {
+            skus[owner[product]][counts[owner[product]]++] = product;
+        }
+        return skus;
+    }
+
+    // SplitMix64 finalizer: spreads consecutive IDs over the whole ring
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
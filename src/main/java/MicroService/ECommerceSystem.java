@@ -1,101 +1,406 @@
 package MicroService;
 
+import Common.LatencyHistogram;
 import akka.actor.AbstractActor;
+import akka.actor.AbstractActorWithTimers;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
+import akka.pattern.Patterns;
+import akka.routing.BalancingPool;
+import akka.routing.RoundRobinPool;
+import akka.routing.SmallestMailboxPool;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ECommerceSystem {
 
     // Message classes
     public static class Browse {}
+    // placedNanos is stamped by whoever places the order and carried through every hop, so
+    // the customer can measure PlaceOrder to Delivered even with several orders in flight
     public static class Delivered {
         public final boolean success;
-        public Delivered(boolean success) { this.success = success; }
+        public final long placedNanos;
+        public Delivered(boolean success, long placedNanos) {
+            this.success = success;
+            this.placedNanos = placedNanos;
+        }
     }
     public static class PlaceOrder {
         public final ActorRef customer;
-        public final byte product;
+        public final int product;
         public final byte qty;
-        public PlaceOrder(ActorRef customer, byte product, byte qty) {
+        public final long placedNanos;
+        public PlaceOrder(ActorRef customer, int product, byte qty, long placedNanos) {
             this.customer = customer;
             this.product = product;
             this.qty = qty;
+            this.placedNanos = placedNanos;
         }
     }
     public static class CheckAvailability {
         public final ActorRef customer;
-        public final byte product;
+        public final int product;
         public final byte qty;
-        public CheckAvailability(ActorRef customer, byte product, byte qty) {
+        public final long placedNanos;
+        public CheckAvailability(ActorRef customer, int product, byte qty, long placedNanos) {
             this.customer = customer;
             this.product = product;
             this.qty = qty;
+            this.placedNanos = placedNanos;
         }
     }
     public static class AvailabilityStatus {
         public final ActorRef customer;
         public final boolean available;
-        public final byte product;
+        public final int product;
         public final byte qty;
-        public AvailabilityStatus(ActorRef customer, boolean available, byte product, byte qty) {
+        public final int stock;         // level seen by the check, -1 for a product the shard does not own
+        public final long placedNanos;
+        public AvailabilityStatus(ActorRef customer, boolean available, int product, byte qty, int stock,
+                                  long placedNanos) {
             this.customer = customer;
             this.available = available;
             this.product = product;
             this.qty = qty;
+            this.stock = stock;
+            this.placedNanos = placedNanos;
         }
     }
+    // fromCache: OrderService confirmed on an AvailabilityCache hit, without the shard's check
     public static class ConfirmBoughtItem {
         public final ActorRef customer;
-        public final byte product;
+        public final int product;
         public final byte qty;
-        public ConfirmBoughtItem(ActorRef customer, byte product, byte qty) {
+        public final long placedNanos;
+        public final boolean fromCache;
+        public ConfirmBoughtItem(ActorRef customer, int product, byte qty, long placedNanos, boolean fromCache) {
             this.customer = customer;
             this.product = product;
             this.qty = qty;
+            this.placedNanos = placedNanos;
+            this.fromCache = fromCache;
         }
     }
+    // oversold: units of this confirm that stock did not cover
     public static class Confirm {
         public final ActorRef customer;
-        public final byte product;
+        public final int product;
         public final byte qty;
-        public Confirm(ActorRef customer, byte product, byte qty) {
+        public final long placedNanos;
+        public final boolean fromCache;
+        public final int oversold;
+        public Confirm(ActorRef customer, int product, byte qty, long placedNanos, boolean fromCache, int oversold) {
             this.customer = customer;
             this.product = product;
             this.qty = qty;
+            this.placedNanos = placedNanos;
+            this.fromCache = fromCache;
+            this.oversold = oversold;
         }
     }
     public static class ArrangeDelivery {
         public final ActorRef customer;
-        public final byte product;
+        public final int product;
         public final byte qty;
-        public ArrangeDelivery(ActorRef customer, byte product, byte qty) {
+        public final long placedNanos;
+        public ArrangeDelivery(ActorRef customer, int product, byte qty, long placedNanos) {
             this.customer = customer;
             this.product = product;
             this.qty = qty;
+            this.placedNanos = placedNanos;
         }
     }
     public static class ShippingIsScheduled {
         public final ActorRef customer;
-        public ShippingIsScheduled(ActorRef customer) { this.customer = customer; }
+        public final long placedNanos;
+        public ShippingIsScheduled(ActorRef customer, long placedNanos) {
+            this.customer = customer;
+            this.placedNanos = placedNanos;
+        }
+    }
+    // Single-round-trip reservation: the shard checks and decrements in one step
+    public static class Reserve {
+        public final ActorRef customer;
+        public final int product;
+        public final byte qty;
+        public final long placedNanos;
+        public Reserve(ActorRef customer, int product, byte qty, long placedNanos) {
+            this.customer = customer;
+            this.product = product;
+            this.qty = qty;
+            this.placedNanos = placedNanos;
+        }
+    }
+    public static class Reserved {
+        public final ActorRef customer;
+        public final boolean reserved;
+        public final int product;
+        public final byte qty;
+        public final long placedNanos;
+        public Reserved(ActorRef customer, boolean reserved, int product, byte qty, long placedNanos) {
+            this.customer = customer;
+            this.reserved = reserved;
+            this.product = product;
+            this.qty = qty;
+            this.placedNanos = placedNanos;
+        }
+    }
+    // Multi-line orders: all lines of a batch are reserved on one shard or none are
+    public static class PlaceOrderLines {
+        public final ActorRef customer;
+        public final int[] products;
+        public final byte[] qtys;
+        public final long placedNanos;
+        public PlaceOrderLines(ActorRef customer, int[] products, byte[] qtys, long placedNanos) {
+            this.customer = customer;
+            this.products = products;
+            this.qtys = qtys;
+            this.placedNanos = placedNanos;
+        }
+    }
+    // Plan of a multi-line order spanning several shards, one batch per shard. All batches are
+    // sent at once and the plan travels with every ReserveBatch/BatchReserved, so OrderService
+    // keeps no per-order state and any routee of an OrderService pool can handle any reply.
+    // Only shards, products and qtys are immutable. reserved and outstanding are written by
+    // whichever routees handle the replies, possibly at the same time: each writes its own
+    // reserved[step] and only then counts `outstanding` down. The decrementAndGet is what makes
+    // those plain writes visible to the routee that reaches zero and alone decides the order,
+    // so reserved[step] must be written before the countdown, never after.
+    public static class ReservationFanOut {
+        public final ActorRef[] shards;
+        public final int[][] products;
+        public final byte[][] qtys;
+        final boolean[] reserved;
+        final AtomicInteger outstanding;
+        public ReservationFanOut(ActorRef[] shards, int[][] products, byte[][] qtys) {
+            this.shards = shards;
+            this.products = products;
+            this.qtys = qtys;
+            this.reserved = new boolean[shards.length];
+            this.outstanding = new AtomicInteger(shards.length);
+        }
+    }
+    // fanOut is null for an order whose lines all live on one shard
+    public static class ReserveBatch {
+        public final ReservationFanOut fanOut;
+        public final int step;
+        public final ActorRef customer;
+        public final int[] products;
+        public final byte[] qtys;
+        public final long placedNanos;
+        public ReserveBatch(ReservationFanOut fanOut, int step, ActorRef customer, int[] products, byte[] qtys,
+                            long placedNanos) {
+            this.fanOut = fanOut;
+            this.step = step;
+            this.customer = customer;
+            this.products = products;
+            this.qtys = qtys;
+            this.placedNanos = placedNanos;
+        }
+    }
+    public static class BatchReserved {
+        public final ReservationFanOut fanOut;
+        public final int step;
+        public final ActorRef customer;
+        public final boolean reserved;
+        public final int[] products;
+        public final byte[] qtys;
+        public final long placedNanos;
+        public BatchReserved(ReservationFanOut fanOut, int step, ActorRef customer, boolean reserved, int[] products,
+                             byte[] qtys, long placedNanos) {
+            this.fanOut = fanOut;
+            this.step = step;
+            this.customer = customer;
+            this.reserved = reserved;
+            this.products = products;
+            this.qtys = qtys;
+            this.placedNanos = placedNanos;
+        }
+    }
+    // Compensation: returns a batch that was reserved for an order that failed on another shard
+    public static class Release {
+        public final int[] products;
+        public final byte[] qtys;
+        public Release(int[] products, byte[] qtys) {
+            this.products = products;
+            this.qtys = qtys;
+        }
+    }
+    public static class GetInventoryStats {}
+    public static class InventoryStats {
+        public final long reserved;
+        public final long rejected;
+        public final long oversold;
+        public final long journalEvents;
+        public final long journalFlushes;
+        public final long replayedEvents;
+        public final long recoveryNanos;
+        public InventoryStats(long reserved, long rejected, long oversold, long journalEvents, long journalFlushes,
+                              long replayedEvents, long recoveryNanos) {
+            this.reserved = reserved;
+            this.rejected = rejected;
+            this.oversold = oversold;
+            this.journalEvents = journalEvents;
+            this.journalFlushes = journalFlushes;
+            this.replayedEvents = replayedEvents;
+            this.recoveryNanos = recoveryNanos;
+        }
+    }
+    public static class GetShippingStats {}
+    public static class ShippingStats {
+        public final long scheduled;
+        public final long backendCalls;
+        public final LatencyHistogram batchingDelay;
+        public ShippingStats(long scheduled, long backendCalls, LatencyHistogram batchingDelay) {
+            this.scheduled = scheduled;
+            this.backendCalls = backendCalls;
+            this.batchingDelay = batchingDelay;
+        }
+    }
+    // Subscribes an availability cache to a shard's stock changes. The shard pushes a
+    // StockUpdate, tagged with the subscriber's number for that shard, every push interval
+    // even when nothing changed, so a cache knows how current its view of the shard is.
+    public static class SubscribeStock {
+        public final ActorRef subscriber;
+        public final int shard;
+        public SubscribeStock(ActorRef subscriber, int shard) {
+            this.subscriber = subscriber;
+            this.shard = shard;
+        }
+    }
+    public static class StockUpdate {
+        public final int shard;
+        public final int[] products;
+        public final int[] levels;
+        public final long sentNanos;
+        public StockUpdate(int shard, int[] products, int[] levels, long sentNanos) {
+            this.shard = shard;
+            this.products = products;
+            this.levels = levels;
+            this.sentNanos = sentNanos;
+        }
+    }
+    public static class GetCacheStats {}
+    public static class CacheStats {
+        public final long hits;
+        public final long absent;
+        public final long stale;
+        public final long nearThreshold;
+        public final long hitOversold;   // units oversold by orders confirmed on a hit
+        public final LatencyHistogram hitLatency;
+        public final LatencyHistogram missLatency;
+        public CacheStats(long hits, long absent, long stale, long nearThreshold, long hitOversold,
+                          LatencyHistogram hitLatency, LatencyHistogram missLatency) {
+            this.hits = hits;
+            this.absent = absent;
+            this.stale = stale;
+            this.nearThreshold = nearThreshold;
+            this.hitOversold = hitOversold;
+            this.hitLatency = hitLatency;
+            this.missLatency = missLatency;
+        }
+        public long checks() {
+            return hits + absent + stale + nearThreshold;
+        }
+    }
+    public static class GetOrderStats {}
+    public static class OrderStats {
+        public final long delivered;
+        public final long rejected;
+        public OrderStats(long delivered, long rejected) {
+            this.delivered = delivered;
+            this.rejected = rejected;
+        }
+    }
+
+    // Pause between a delivery and a load-mode customer's next order
+    public enum ThinkTime {
+        FIXED, UNIFORM, EXPONENTIAL;
+
+        long draw(Random random, long meanNanos) {
+            switch (this) {
+                case FIXED:
+                    return meanNanos;
+                case UNIFORM:
+                    return (long) (random.nextDouble() * 2 * meanNanos);
+                default:
+                    return (long) (-Math.log(1 - random.nextDouble()) * meanNanos);
+            }
+        }
     }
 
-    // Customer Actor
-    public static class Customer extends AbstractActor {
+    // Customer Actor. The Rebeca customer browses in a loop and buys on a coin flip; a load-mode
+    // customer orders, waits for delivery, thinks, and orders again, or with no think time only
+    // receives deliveries for orders an OpenLoopGenerator places on its behalf.
+    public static class Customer extends AbstractActorWithTimers {
         private final int id;
         private boolean buying;
         private final ActorRef orderService;
+        private final int catalogSize;
+        private final int lines;
+        private final LatencyHistogram latency;
+        private final boolean browsing;
+        private final ThinkTime think;
+        private final long meanThinkNanos;
         private final Random random = new Random();
 
         public Customer(int id, ActorRef orderService) {
+            this(id, orderService, 2, 1, null);
+        }
+
+        // lines > 1 places PlaceOrderLines orders; latency, if given, records PlaceOrder to Delivered
+        public Customer(int id, ActorRef orderService, int catalogSize, int lines, LatencyHistogram latency) {
+            this(id, orderService, catalogSize, lines, latency, true, null, 0);
+        }
+
+        public Customer(int id, ActorRef orderService, int catalogSize, int lines, LatencyHistogram latency,
+                        ThinkTime think, long meanThinkNanos) {
+            this(id, orderService, catalogSize, lines, latency, false, think, meanThinkNanos);
+        }
+
+        private Customer(int id, ActorRef orderService, int catalogSize, int lines, LatencyHistogram latency,
+                         boolean browsing, ThinkTime think, long meanThinkNanos) {
             this.id = id;
             this.orderService = orderService;
+            this.catalogSize = catalogSize;
+            this.lines = lines;
+            this.latency = latency;
+            this.browsing = browsing;
+            this.think = think;
+            this.meanThinkNanos = meanThinkNanos;
+        }
+
+        public static Props props(int id, ActorRef orderService, int catalogSize) {
+            return props(id, orderService, catalogSize, 1, null);
+        }
+
+        public static Props props(int id, ActorRef orderService, int catalogSize, int lines, LatencyHistogram latency) {
+            return Props.create(Customer.class, () -> new Customer(id, orderService, catalogSize, lines, latency));
+        }
+
+        // think == null: passive, orders come from an OpenLoopGenerator
+        public static Props props(int id, ActorRef orderService, int catalogSize, int lines, LatencyHistogram latency,
+                                  ThinkTime think, long meanThinkNanos) {
+            return Props.create(Customer.class,
+                    () -> new Customer(id, orderService, catalogSize, lines, latency, think, meanThinkNanos));
         }
 
         @Override
         public void preStart() {
-            getSelf().tell(new Browse(), getSelf());
+            if (browsing) {
+                getSelf().tell(new Browse(), getSelf());
+            } else if (think != null) {
+                // Start at a random point of the first think so 100k customers do not order at once
+                thinkThenOrder((long) (random.nextDouble() * 2 * meanThinkNanos));
+            }
         }
 
         @Override
@@ -107,71 +412,392 @@ public class ECommerceSystem {
         }
 
         private void handleBrowse(Browse msg) {
-            buying = random.nextBoolean();
+            buying = !browsing || random.nextBoolean();
             if (buying) {
-                byte product = (byte) random.nextInt(2);
-                byte qty = (byte) (1 + random.nextInt(2));
-                orderService.tell(new PlaceOrder(getSelf(), product, qty), getSelf());
+                placeOrder(random, getSelf(), orderService, catalogSize, lines, System.nanoTime());
             } else {
                 getSelf().tell(new Browse(), getSelf());
             }
         }
 
         private void handleDelivered(Delivered msg) {
+            if (latency != null) {
+                latency.record(System.nanoTime() - msg.placedNanos);
+            }
             buying = false;
-            getSelf().tell(new Browse(), getSelf());
+            if (browsing) {
+                getSelf().tell(new Browse(), getSelf());
+            } else if (think != null) {
+                thinkThenOrder(think.draw(random, meanThinkNanos));
+            }
+        }
+
+        private void thinkThenOrder(long nanos) {
+            getTimers().startSingleTimer("think", new Browse(), Duration.ofNanos(nanos));
+        }
+
+        // A random order of `lines` lines from [0, catalogSize), placed on behalf of customer
+        static void placeOrder(Random random, ActorRef customer, ActorRef orderService, int catalogSize, int lines,
+                               long placedNanos) {
+            if (lines == 1) {
+                int product = random.nextInt(catalogSize);
+                byte qty = (byte) (1 + random.nextInt(2));
+                orderService.tell(new PlaceOrder(customer, product, qty, placedNanos), customer);
+            } else {
+                int[] products = new int[lines];
+                byte[] qtys = new byte[lines];
+                for (int i = 0; i < lines; i++) {
+                    products[i] = random.nextInt(catalogSize);
+                    qtys[i] = (byte) (1 + random.nextInt(2));
+                }
+                orderService.tell(new PlaceOrderLines(customer, products, qtys, placedNanos), customer);
+            }
         }
     }
 
-    // OrderService Actor
+    // TWO_STEP is the Rebeca model's CheckAvailability/ConfirmBoughtItem exchange, which can
+    // oversell when orders for the same product interleave; RESERVE is one atomic round trip
+    public enum Flow { TWO_STEP, RESERVE }
+
+    public enum PoolKind { BALANCING, SMALLEST_MAILBOX, ROUND_ROBIN }
+
+    // Order outcomes, shared by all routees of an OrderService pool
+    public static class OrderCounters {
+        final LongAdder delivered = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+    }
+
+    // OrderService Actor. It only forwards: everything an order needs travels in its messages
+    // and replies go to msg.customer, so it can run as a pool of routees (see pool()).
     public static class OrderService extends AbstractActor {
-        private final ActorRef inventoryService;
+        public static final String DISPATCHER = "order-dispatcher";
+
+        private final ActorRef[] inventoryShards;
+        private final ConsistentHashRing ring;
         private final ActorRef shippingService;
+        private final Flow flow;
+        private final OrderCounters counters;
+        private final AvailabilityCache cache;
 
         public OrderService(ActorRef inventoryService, ActorRef shippingService) {
-            this.inventoryService = inventoryService;
+            this(new ActorRef[]{inventoryService}, new ConsistentHashRing(1, 1), shippingService, Flow.TWO_STEP,
+                    new OrderCounters());
+        }
+
+        // inventoryShards[i] owns the products that ring.shardOf maps to i
+        public OrderService(ActorRef[] inventoryShards, ConsistentHashRing ring, ActorRef shippingService, Flow flow,
+                            OrderCounters counters) {
+            this(inventoryShards, ring, shippingService, flow, counters, null);
+        }
+
+        // With a cache policy, TWO_STEP checks that the cache can answer skip the inventory round
+        // trip; RESERVE always asks the shard, since a reservation must be authoritative.
+        // A hit sends ConfirmBoughtItem unchecked, so a cached level that is wrong by more than
+        // the safety margin oversells; those units are counted in CacheStats.hitOversold.
+        // The cache follows the shards through this actor's own subscription, so it cannot be
+        // used by the routees of a pool (see pool()).
+        public OrderService(ActorRef[] inventoryShards, ConsistentHashRing ring, ActorRef shippingService, Flow flow,
+                            OrderCounters counters, AvailabilityCache.Policy cachePolicy) {
+            if (inventoryShards.length != ring.shards()) {
+                throw new IllegalArgumentException("ring has " + ring.shards() + " shards, got "
+                        + inventoryShards.length + " inventory actors");
+            }
+            this.inventoryShards = inventoryShards;
+            this.ring = ring;
             this.shippingService = shippingService;
+            this.flow = flow;
+            this.counters = counters;
+            this.cache = cachePolicy == null ? null : new AvailabilityCache(cachePolicy, inventoryShards.length);
+        }
+
+        public static Props props(ActorRef[] inventoryShards, ConsistentHashRing ring, ActorRef shippingService) {
+            return props(inventoryShards, ring, shippingService, Flow.RESERVE);
+        }
+
+        public static Props props(ActorRef[] inventoryShards, ConsistentHashRing ring, ActorRef shippingService,
+                                  Flow flow) {
+            OrderCounters counters = new OrderCounters();
+            return Props.create(OrderService.class,
+                    () -> new OrderService(inventoryShards, ring, shippingService, flow, counters));
+        }
+
+        public static Props props(ActorRef[] inventoryShards, ConsistentHashRing ring, ActorRef shippingService,
+                                  Flow flow, AvailabilityCache.Policy cachePolicy) {
+            OrderCounters counters = new OrderCounters();
+            return Props.create(OrderService.class,
+                    () -> new OrderService(inventoryShards, ring, shippingService, flow, counters, cachePolicy));
+        }
+
+        @Override
+        public void preStart() {
+            if (cache != null) {
+                for (int shard = 0; shard < inventoryShards.length; shard++) {
+                    inventoryShards[shard].tell(new SubscribeStock(getSelf(), shard), getSelf());
+                }
+            }
+        }
+
+        // A pool of `routees` OrderServices sharing one set of counters. Routees run on
+        // order-dispatcher; a balancing pool's routees share one mailbox on the dispatcher
+        // configured under akka.actor.deployment./order.pool-dispatcher, so deploy it as "order".
+        // Routees take no AvailabilityCache: a routee subscribed to the shards would also be
+        // handed StockUpdates meant for the others, and a balancing pool gives each routee a
+        // different subset, so no routee's cache would see every change.
+        public static Props pool(PoolKind kind, int routees, ActorRef[] inventoryShards, ConsistentHashRing ring,
+                                 ActorRef shippingService, Flow flow) {
+            Props routee = props(inventoryShards, ring, shippingService, flow).withDispatcher(DISPATCHER);
+            switch (kind) {
+                case BALANCING:
+                    return new BalancingPool(routees).props(routee);
+                case SMALLEST_MAILBOX:
+                    return new SmallestMailboxPool(routees).props(routee);
+                default:
+                    return new RoundRobinPool(routees).props(routee);
+            }
         }
 
         @Override
         public Receive createReceive() {
             return receiveBuilder()
                     .match(PlaceOrder.class, this::handlePlaceOrder)
+                    .match(PlaceOrderLines.class, this::handlePlaceOrderLines)
+                    .match(Reserved.class, this::handleReserved)
+                    .match(BatchReserved.class, this::handleBatchReserved)
                     .match(AvailabilityStatus.class, this::handleAvailabilityStatus)
                     .match(Confirm.class, this::handleConfirm)
                     .match(ShippingIsScheduled.class, this::handleShippingIsScheduled)
+                    .match(StockUpdate.class, this::handleStockUpdate)
+                    .match(GetOrderStats.class, msg -> getSender().tell(
+                            new OrderStats(counters.delivered.sum(), counters.rejected.sum()), getSelf()))
+                    .match(GetCacheStats.class, msg -> getSender().tell(cache == null
+                            ? new CacheStats(0, 0, 0, 0, 0, new LatencyHistogram(), new LatencyHistogram())
+                            : cache.stats(), getSelf()))
                     .build();
         }
 
+        private ActorRef inventoryFor(int product) {
+            return inventoryShards[ring.shardOf(product)];
+        }
+
         private void handlePlaceOrder(PlaceOrder msg) {
-            inventoryService.tell(new CheckAvailability(msg.customer, msg.product, msg.qty), getSelf());
+            if (flow == Flow.RESERVE) {
+                inventoryFor(msg.product).tell(new Reserve(msg.customer, msg.product, msg.qty, msg.placedNanos), getSelf());
+            } else if (cache != null
+                    && cache.clearlyAvailable(msg.product, ring.shardOf(msg.product), msg.qty, System.nanoTime())) {
+                cache.recordCheck(true, System.nanoTime() - msg.placedNanos);
+                inventoryFor(msg.product).tell(new ConfirmBoughtItem(msg.customer, msg.product, msg.qty, msg.placedNanos,
+                        true), getSelf());
+            } else {
+                inventoryFor(msg.product).tell(new CheckAvailability(msg.customer, msg.product, msg.qty, msg.placedNanos), getSelf());
+            }
+        }
+
+        private void handleReserved(Reserved msg) {
+            if (msg.reserved) {
+                shippingService.tell(new ArrangeDelivery(msg.customer, msg.product, msg.qty, msg.placedNanos), getSelf());
+            } else {
+                counters.rejected.increment();
+                msg.customer.tell(new Delivered(false, msg.placedNanos), getSelf());
+            }
+        }
+
+        // Groups the lines by shard: one ReserveBatch if they share a shard, else one per shard
+        // sent in parallel under a shared ReservationFanOut
+        private void handlePlaceOrderLines(PlaceOrderLines msg) {
+            int lines = msg.products.length;
+            int[] shardOfLine = new int[lines];
+            int[] linesPerShard = new int[inventoryShards.length];
+            int shardsTouched = 0;
+            for (int i = 0; i < lines; i++) {
+                shardOfLine[i] = ring.shardOf(msg.products[i]);
+                if (linesPerShard[shardOfLine[i]]++ == 0) {
+                    shardsTouched++;
+                }
+            }
+            if (shardsTouched == 1) {
+                inventoryShards[shardOfLine[0]].tell(
+                        new ReserveBatch(null, 0, msg.customer, msg.products, msg.qtys, msg.placedNanos), getSelf());
+                return;
+            }
+            ActorRef[] shards = new ActorRef[shardsTouched];
+            int[][] products = new int[shardsTouched][];
+            byte[][] qtys = new byte[shardsTouched][];
+            for (int shard = 0, step = 0; shard < inventoryShards.length; shard++) {
+                if (linesPerShard[shard] == 0) {
+                    continue;
+                }
+                shards[step] = inventoryShards[shard];
+                products[step] = new int[linesPerShard[shard]];
+                qtys[step] = new byte[linesPerShard[shard]];
+                for (int i = 0, j = 0; i < lines; i++) {
+                    if (shardOfLine[i] == shard) {
+                        products[step][j] = msg.products[i];
+                        qtys[step][j++] = msg.qtys[i];
+                    }
+                }
+                step++;
+            }
+            ReservationFanOut fanOut = new ReservationFanOut(shards, products, qtys);
+            for (int step = 0; step < shardsTouched; step++) {
+                shards[step].tell(new ReserveBatch(fanOut, step, msg.customer, products[step], qtys[step],
+                        msg.placedNanos), getSelf());
+            }
+        }
+
+        private void handleBatchReserved(BatchReserved msg) {
+            ReservationFanOut fanOut = msg.fanOut;
+            if (fanOut == null) {
+                completeOrder(msg.customer, msg.reserved, msg.products[0], msg.qtys[0], msg.placedNanos);
+                return;
+            }
+            // Must precede the countdown: see ReservationFanOut
+            fanOut.reserved[msg.step] = msg.reserved;
+            if (fanOut.outstanding.decrementAndGet() > 0) {
+                return;
+            }
+            boolean all = true;
+            for (boolean reserved : fanOut.reserved) {
+                all &= reserved;
+            }
+            if (!all) {
+                for (int step = 0; step < fanOut.shards.length; step++) {
+                    if (fanOut.reserved[step]) {
+                        fanOut.shards[step].tell(new Release(fanOut.products[step], fanOut.qtys[step]), getSelf());
+                    }
+                }
+            }
+            completeOrder(msg.customer, all, fanOut.products[0][0], fanOut.qtys[0][0], msg.placedNanos);
+        }
+
+        // Shipping only needs the customer, so a multi-line order is scheduled as one delivery
+        private void completeOrder(ActorRef customer, boolean reserved, int product, byte qty, long placedNanos) {
+            if (reserved) {
+                shippingService.tell(new ArrangeDelivery(customer, product, qty, placedNanos), getSelf());
+            } else {
+                counters.rejected.increment();
+                customer.tell(new Delivered(false, placedNanos), getSelf());
+            }
         }
 
         private void handleAvailabilityStatus(AvailabilityStatus msg) {
+            if (cache != null) {
+                long now = System.nanoTime();
+                cache.recordCheck(false, now - msg.placedNanos);
+                if (msg.stock >= 0) {
+                    cache.put(msg.product, msg.stock);
+                }
+            }
             if (msg.available) {
-                inventoryService.tell(new ConfirmBoughtItem(msg.customer, msg.product, msg.qty), getSelf());
+                inventoryFor(msg.product).tell(new ConfirmBoughtItem(msg.customer, msg.product, msg.qty, msg.placedNanos,
+                        false), getSelf());
             } else {
-                msg.customer.tell(new Delivered(false), getSelf());
+                counters.rejected.increment();
+                msg.customer.tell(new Delivered(false, msg.placedNanos), getSelf());
             }
         }
 
         private void handleConfirm(Confirm msg) {
-            shippingService.tell(new ArrangeDelivery(msg.customer, msg.product, msg.qty), getSelf());
+            if (msg.fromCache && msg.oversold > 0) {
+                cache.recordHitOversold(msg.oversold);
+            }
+            shippingService.tell(new ArrangeDelivery(msg.customer, msg.product, msg.qty, msg.placedNanos), getSelf());
         }
 
         private void handleShippingIsScheduled(ShippingIsScheduled msg) {
-            msg.customer.tell(new Delivered(true), getSelf());
+            counters.delivered.increment();
+            msg.customer.tell(new Delivered(true, msg.placedNanos), getSelf());
+        }
+
+        private void handleStockUpdate(StockUpdate msg) {
+            for (int i = 0; i < msg.products.length; i++) {
+                cache.refresh(msg.products[i], msg.levels[i]);
+            }
+            cache.shardPushed(msg.shard, msg.sentNanos);
         }
     }
 
-    // InventoryService Actor
-    public static class InventoryService extends AbstractActor {
-        private final int[] stockLevel = new int[2];
+    // InventoryService Actor: one shard of the catalog. skus is sorted and stockLevel[i] is the
+    // stock of skus[i], so a shard costs 8 bytes per product and no per-product objects.
+    // With a journal every stock change is logged, and the reply that reports it is held until
+    // the event is durable: up to journalBatch held replies share one fsync, and a partial
+    // batch is flushed by a 1ms timer. Rejections change nothing and are answered at once,
+    // from stock that already counts decrements still waiting for that fsync. If the shard
+    // crashes first, those decrements are lost with the replies they held back, so a request
+    // rejected for lack of stock might have fitted after all. Stock is never oversold this way.
+    public static class InventoryService extends AbstractActorWithTimers {
+        private static final Duration FLUSH_INTERVAL = Duration.ofMillis(1);
+        private static final Object FLUSH = "flush";
+        private static final Duration PUSH_INTERVAL = Duration.ofMillis(1);
+        private static final Object PUSH = "push";
+
+        private final int[] skus;
+        private final int[] stockLevel;
+        private long reserved;
+        private long rejected;
+        private long oversold;
+
+        private final Path journalPath;
+        private final int journalBatch;
+        private final long snapshotEvery;
+        private InventoryJournal journal;
+        private long snapshotAt;
+        private final ActorRef[] heldTo;
+        private final Object[] heldReplies;
+        private int held;
+
+        // Availability caches to tell about stock changes, and the products changed since the last push
+        private ActorRef[] subscribers = new ActorRef[0];
+        private int[] subscriberTags = new int[0];
+        private int[] changed = new int[64];
+        private int changedCount;
+
+        public InventoryService() {
+            this(new int[]{0, 1}, 5);
+        }
+
+        public InventoryService(int[] skus, int initialStock) {
+            this(skus, initialStock, null, 1, 0);
+        }
+
+        // snapshotEvery: journal events between snapshots, 0 for none
+        public InventoryService(int[] skus, int initialStock, Path journalPath, int journalBatch, long snapshotEvery) {
+            if (journalBatch < 1) {
+                throw new IllegalArgumentException("journalBatch must be at least 1");
+            }
+            this.skus = skus;
+            this.stockLevel = new int[skus.length];
+            Arrays.fill(stockLevel, initialStock);
+            this.journalPath = journalPath;
+            this.journalBatch = journalBatch;
+            this.snapshotEvery = snapshotEvery;
+            this.heldTo = new ActorRef[journalBatch];
+            this.heldReplies = new Object[journalBatch];
+        }
+
+        public static Props props(int[] skus, int initialStock) {
+            return Props.create(InventoryService.class, () -> new InventoryService(skus, initialStock));
+        }
+
+        public static Props props(int[] skus, int initialStock, Path journalPath, int journalBatch,
+                                  long snapshotEvery) {
+            return Props.create(InventoryService.class,
+                    () -> new InventoryService(skus, initialStock, journalPath, journalBatch, snapshotEvery));
+        }
 
         @Override
         public void preStart() {
-            stockLevel[0] = 5;
-            stockLevel[1] = 5;
+            if (journalPath != null) {
+                journal = new InventoryJournal(journalPath, journalBatch);
+                journal.recover(skus, stockLevel);
+            }
+        }
+
+        @Override
+        public void postStop() {
+            if (journal != null) {
+                flush();
+                journal.close();
+            }
         }
 
         @Override
@@ -179,35 +805,309 @@ public class ECommerceSystem {
             return receiveBuilder()
                     .match(CheckAvailability.class, this::handleCheckAvailability)
                     .match(ConfirmBoughtItem.class, this::handleConfirmBoughtItem)
+                    .match(Reserve.class, this::handleReserve)
+                    .match(ReserveBatch.class, this::handleReserveBatch)
+                    .match(Release.class, this::handleRelease)
+                    .matchEquals(FLUSH, msg -> flush())
+                    .match(SubscribeStock.class, this::handleSubscribeStock)
+                    .matchEquals(PUSH, msg -> push())
+                    .match(GetInventoryStats.class, msg -> getSender().tell(new InventoryStats(reserved, rejected,
+                            oversold, journal == null ? 0 : journal.events(), journal == null ? 0 : journal.flushes(),
+                            journal == null ? 0 : journal.replayed(), journal == null ? 0 : journal.recoveryNanos()),
+                            getSelf()))
                     .build();
         }
 
+        private void record(int product, int delta) {
+            if (journal != null) {
+                journal.append(product, delta);
+            }
+            if (subscribers.length > 0) {
+                if (changedCount == changed.length) {
+                    changed = Arrays.copyOf(changed, changedCount * 2);
+                }
+                changed[changedCount++] = product;
+            }
+        }
+
+        private void handleSubscribeStock(SubscribeStock msg) {
+            if (subscribers.length == 0) {
+                getTimers().startTimerAtFixedRate(PUSH, PUSH, PUSH_INTERVAL);
+            }
+            subscribers = Arrays.copyOf(subscribers, subscribers.length + 1);
+            subscriberTags = Arrays.copyOf(subscriberTags, subscriberTags.length + 1);
+            subscribers[subscribers.length - 1] = msg.subscriber;
+            subscriberTags[subscriberTags.length - 1] = msg.shard;
+        }
+
+        // Every interval, the current level of each product changed in it (possibly none)
+        private void push() {
+            int[] products = Arrays.copyOf(changed, changedCount);
+            int[] levels = new int[changedCount];
+            for (int i = 0; i < changedCount; i++) {
+                levels[i] = stockLevel[Arrays.binarySearch(skus, products[i])];
+            }
+            changedCount = 0;
+            long now = System.nanoTime();
+            for (int i = 0; i < subscribers.length; i++) {
+                subscribers[i].tell(new StockUpdate(subscriberTags[i], products, levels, now), getSelf());
+            }
+        }
+
+        // Replies that report a stock change wait for the journal
+        private void replyAfterFlush(Object reply) {
+            if (journal == null) {
+                getSender().tell(reply, getSelf());
+                return;
+            }
+            heldTo[held] = getSender();
+            heldReplies[held++] = reply;
+            if (held == journalBatch) {
+                flush();
+            } else if (held == 1) {
+                getTimers().startSingleTimer(FLUSH, FLUSH, FLUSH_INTERVAL);
+            }
+        }
+
+        private void flush() {
+            if (journal == null || held == 0 && journal.buffered() == 0) {
+                return;
+            }
+            getTimers().cancel(FLUSH);
+            journal.flush();
+            for (int i = 0; i < held; i++) {
+                heldTo[i].tell(heldReplies[i], getSelf());
+                heldTo[i] = null;
+                heldReplies[i] = null;
+            }
+            held = 0;
+            if (snapshotEvery > 0 && journal.events() - snapshotAt >= snapshotEvery) {
+                journal.snapshot(stockLevel);
+                snapshotAt = journal.events();
+            }
+        }
+
         private void handleCheckAvailability(CheckAvailability msg) {
-            boolean available = stockLevel[msg.product] >= msg.qty;
-            getSender().tell(new AvailabilityStatus(msg.customer, available, msg.product, msg.qty), getSelf());
+            int index = Arrays.binarySearch(skus, msg.product);
+            boolean available = index >= 0 && stockLevel[index] >= msg.qty;
+            getSender().tell(new AvailabilityStatus(msg.customer, available, msg.product, msg.qty,
+                    index >= 0 ? stockLevel[index] : -1, msg.placedNanos), getSelf());
         }
 
+        // Stock may have been taken since the check; whatever goes below zero was oversold
         private void handleConfirmBoughtItem(ConfirmBoughtItem msg) {
-            stockLevel[msg.product] -= msg.qty;
-            getSender().tell(new Confirm(msg.customer, msg.product, msg.qty), getSelf());
+            int index = Arrays.binarySearch(skus, msg.product);
+            int before = stockLevel[index];
+            stockLevel[index] -= msg.qty;
+            int uncovered = Math.min(msg.qty, Math.max(0, msg.qty - before));
+            oversold += uncovered;
+            reserved++;
+            record(msg.product, -msg.qty);
+            replyAfterFlush(new Confirm(msg.customer, msg.product, msg.qty, msg.placedNanos, msg.fromCache, uncovered));
+        }
+
+        private boolean take(int product, byte qty) {
+            int index = Arrays.binarySearch(skus, product);
+            if (index < 0 || stockLevel[index] < qty) {
+                return false;
+            }
+            stockLevel[index] -= qty;
+            return true;
+        }
+
+        private void handleReserve(Reserve msg) {
+            Reserved reply = new Reserved(msg.customer, take(msg.product, msg.qty), msg.product, msg.qty,
+                    msg.placedNanos);
+            if (reply.reserved) {
+                reserved++;
+                record(msg.product, -msg.qty);
+                replyAfterFlush(reply);
+            } else {
+                rejected++;
+                getSender().tell(reply, getSelf());
+            }
+        }
+
+        // Takes lines in order and puts back the ones already taken if a later line is short
+        private void handleReserveBatch(ReserveBatch msg) {
+            int taken = 0;
+            while (taken < msg.products.length && take(msg.products[taken], msg.qtys[taken])) {
+                taken++;
+            }
+            boolean ok = taken == msg.products.length;
+            BatchReserved reply = new BatchReserved(msg.fanOut, msg.step, msg.customer, ok, msg.products, msg.qtys,
+                    msg.placedNanos);
+            if (ok) {
+                reserved++;
+                for (int i = 0; i < taken; i++) {
+                    record(msg.products[i], -msg.qtys[i]);
+                }
+                replyAfterFlush(reply);
+            } else {
+                rejected++;
+                for (int i = 0; i < taken; i++) {
+                    stockLevel[Arrays.binarySearch(skus, msg.products[i])] += msg.qtys[i];
+                }
+                getSender().tell(reply, getSelf());
+            }
+        }
+
+        private void handleRelease(Release msg) {
+            for (int i = 0; i < msg.products.length; i++) {
+                stockLevel[Arrays.binarySearch(skus, msg.products[i])] += msg.qtys[i];
+                record(msg.products[i], msg.qtys[i]);
+            }
+            if (journal != null && held == 0) {
+                getTimers().startSingleTimer(FLUSH, FLUSH, FLUSH_INTERVAL);
+            }
         }
     }
 
-    // ShippingService Actor
-    public static class ShippingService extends AbstractActor {
+    // ShippingService Actor. Each backend call schedules a batch of deliveries: a batch is sent
+    // when it reaches maxBatch deliveries or when the first one has waited `window`, whichever
+    // comes first, and every delivery in it is then answered. A zero window calls the backend
+    // once per delivery, as in the Rebeca model. callCostNanos simulates a backend call's latency
+    // without holding the dispatcher: the batch is handed to a timer and answered when it fires,
+    // so several calls can be in flight. Timers fire on scheduler ticks, so a cost below the tick
+    // (akka.scheduler.tick-duration) is rounded up to it.
+    public static class ShippingService extends AbstractActorWithTimers {
+        private static final Object WINDOW = "window";
+
+        // A batch whose backend call is in flight; it is also its own timer key
+        private static final class BackendReply {
+            final ActorRef[] from;
+            final ActorRef[] customers;
+            final long[] placedNanos;
+            BackendReply(ActorRef[] from, ActorRef[] customers, long[] placedNanos) {
+                this.from = from;
+                this.customers = customers;
+                this.placedNanos = placedNanos;
+            }
+        }
+
+        private final Duration window;
+        private final int maxBatch;
+        private final long callCostNanos;
+        private final ActorRef[] heldFrom;
+        private final ActorRef[] heldCustomers;
+        private final long[] heldPlacedNanos;
+        private final long[] heldSinceNanos;
+        private int held;
+        private long scheduled;
+        private long backendCalls;
+        private final LatencyHistogram batchingDelay = new LatencyHistogram();
+
+        public ShippingService() {
+            this(Duration.ZERO, 1, 0);
+        }
+
+        public ShippingService(Duration window, int maxBatch, long callCostNanos) {
+            if (maxBatch < 1) {
+                throw new IllegalArgumentException("maxBatch must be at least 1");
+            }
+            this.window = window;
+            this.maxBatch = window.isZero() ? 1 : maxBatch;
+            this.callCostNanos = callCostNanos;
+            this.heldFrom = new ActorRef[this.maxBatch];
+            this.heldCustomers = new ActorRef[this.maxBatch];
+            this.heldPlacedNanos = new long[this.maxBatch];
+            this.heldSinceNanos = new long[this.maxBatch];
+        }
+
+        public static Props props(Duration window, int maxBatch, long callCostNanos) {
+            return Props.create(ShippingService.class, () -> new ShippingService(window, maxBatch, callCostNanos));
+        }
+
         @Override
         public Receive createReceive() {
             return receiveBuilder()
                     .match(ArrangeDelivery.class, this::handleArrangeDelivery)
+                    .matchEquals(WINDOW, msg -> callBackend())
+                    .match(BackendReply.class, this::answer)
+                    .match(GetShippingStats.class, msg -> getSender().tell(
+                            new ShippingStats(scheduled, backendCalls, batchingDelay), getSelf()))
                     .build();
         }
 
         private void handleArrangeDelivery(ArrangeDelivery msg) {
-            getSender().tell(new ShippingIsScheduled(msg.customer), getSelf());
+            heldFrom[held] = getSender();
+            heldCustomers[held] = msg.customer;
+            heldPlacedNanos[held] = msg.placedNanos;
+            heldSinceNanos[held++] = System.nanoTime();
+            if (held == maxBatch) {
+                getTimers().cancel(WINDOW);
+                callBackend();
+            } else if (held == 1) {
+                getTimers().startSingleTimer(WINDOW, WINDOW, window);
+            }
+        }
+
+        private void callBackend() {
+            if (held == 0) {
+                return;
+            }
+            backendCalls++;
+            long now = System.nanoTime();
+            for (int i = 0; i < held; i++) {
+                batchingDelay.record(now - heldSinceNanos[i]);
+            }
+            BackendReply reply = new BackendReply(Arrays.copyOf(heldFrom, held), Arrays.copyOf(heldCustomers, held),
+                    Arrays.copyOf(heldPlacedNanos, held));
+            Arrays.fill(heldFrom, 0, held, null);
+            Arrays.fill(heldCustomers, 0, held, null);
+            held = 0;
+            if (callCostNanos == 0) {
+                answer(reply);
+            } else {
+                getTimers().startSingleTimer(reply, reply, Duration.ofNanos(callCostNanos));
+            }
+        }
+
+        private void answer(BackendReply reply) {
+            for (int i = 0; i < reply.from.length; i++) {
+                reply.from[i].tell(new ShippingIsScheduled(reply.customers[i], reply.placedNanos[i]), getSelf());
+            }
+            scheduled += reply.from.length;
         }
     }
 
-    public static void main(String[] args) {
+    // One InventoryService per ring shard, each holding the slice of [0, catalogSize) it owns
+    static ActorRef[] inventoryShards(ActorSystem system, ConsistentHashRing ring, int catalogSize, int stock) {
+        return inventoryShards(system, ring, catalogSize, stock, null, 1, 0);
+    }
+
+    // As above, shard i journaling to journalDir/inventory<i>.journal when journalDir is given
+    static ActorRef[] inventoryShards(ActorSystem system, ConsistentHashRing ring, int catalogSize, int stock,
+                                      Path journalDir, int journalBatch, long snapshotEvery) {
+        int[][] skus = ring.partition(catalogSize);
+        ActorRef[] shards = new ActorRef[ring.shards()];
+        for (int i = 0; i < shards.length; i++) {
+            Path journal = journalDir == null ? null : journalDir.resolve("inventory" + i + ".journal");
+            shards[i] = system.actorOf(InventoryService.props(skus[i], stock, journal, journalBatch, snapshotEvery),
+                    "inventory" + i);
+        }
+        return shards;
+    }
+
+    static OrderStats orderStats(ActorRef orderService) throws Exception {
+        return (OrderStats) Patterns.ask(orderService, new GetOrderStats(), Duration.ofSeconds(30))
+                .toCompletableFuture().get();
+    }
+
+    // Usage: ECommerceSystem                (three customers, two products, as in the Rebeca model)
+    //        ECommerceSystem <shards, e.g. 1,4,16> [customers] [catalogSize] [seconds] [stock]
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            int customers = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+            int catalogSize = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+            int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+            int stock = args.length > 4 ? Integer.parseInt(args[4]) : 1_000_000;
+            for (String shards : args[0].split(",")) {
+                runSharded(Integer.parseInt(shards), customers, catalogSize, seconds, stock);
+            }
+            return;
+        }
+
         ActorSystem system = ActorSystem.create("ECommerceSystem");
 
         // Create services
@@ -220,4 +1120,31 @@ public class ECommerceSystem {
         system.actorOf(Props.create(Customer.class, 2, orderService), "customer2");
         system.actorOf(Props.create(Customer.class, 3, orderService), "customer3");
     }
-}
\ No newline at end of file
+
+    private static void runSharded(int shardCount, int customers, int catalogSize, int seconds, int stock)
+            throws Exception {
+        ActorSystem system = ActorSystem.create("ECommerceSystem");
+        try {
+            ConsistentHashRing ring = new ConsistentHashRing(shardCount, 128);
+            ActorRef[] shards = inventoryShards(system, ring, catalogSize, stock);
+            ActorRef shippingService = system.actorOf(Props.create(ShippingService.class), "shipping");
+            ActorRef orderService = system.actorOf(OrderService.props(shards, ring, shippingService), "order");
+            for (int i = 0; i < customers; i++) {
+                system.actorOf(Customer.props(i, orderService, catalogSize), "customer" + i);
+            }
+
+            Thread.sleep(2000);
+            OrderStats before = orderStats(orderService);
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            OrderStats after = orderStats(orderService);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%4d shards, %,d customers, %,d SKUs: orders/s=%,.0f rejected/s=%,.0f%n",
+                    shardCount, customers, catalogSize, (after.delivered - before.delivered) / elapsed,
+                    (after.rejected - before.rejected) / elapsed);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package MicroService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Append-only journal of one inventory shard's stock changes. An event is 8 bytes: the
+// product and the signed change to its stock. Appends fill a direct buffer that is written
+// with one FileChannel.write when it fills up; flush() writes the rest and forces the file,
+// so the caller decides how many events share one fsync. The journal is a run of numbered
+// segment files (<path>.0, <path>.1, ...). A snapshot starts a new segment, and the snapshot
+// file next to the journal holds the whole stock array and that segment's number, so
+// recovery loads it and replays only the segments from there on; the segments it covers are
+// deleted. A torn last event (crash mid-write) is ignored. Every new file name is made
+// durable (the directory is forced) before anything that depends on it, so what flush() and
+// snapshot() promise holds across a power loss, not only a process crash.
+final class InventoryJournal implements Closeable {
+    private static final int EVENT = 8;
+    private static final int SNAPSHOT_HEADER = 12;
+
+    private final Path path;
+    private final Path snapshotPath;
+    private FileChannel channel;
+    private final ByteBuffer buffer;
+    private long firstSegment;
+    private long segment;
+    private long position;
+    private long events;
+    private long flushes;
+    private long snapshots;
+    private long replayed;
+    private long recoveryNanos;
+
+    // Appends go to the newest segment at or after the one the snapshot starts from
+    InventoryJournal(Path path, int bufferedEvents) {
+        this.path = path;
+        this.snapshotPath = path.resolveSibling(path.getFileName() + ".snapshot");
+        this.buffer = ByteBuffer.allocateDirect(Math.max(1, bufferedEvents) * EVENT);
+        try {
+            firstSegment = readSnapshot(null);
+            segment = firstSegment;
+            while (Files.exists(segmentPath(segment + 1))) {
+                segment++;
+            }
+            channel = openSegment(segment);
+            forceDirectory();
+            position = channel.size() / EVENT * EVENT;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path segmentPath(long number) {
+        return path.resolveSibling(path.getFileName() + "." + number);
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    private void forceDirectory() throws IOException {
+        try (FileChannel directory = FileChannel.open(path.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+    }
+
+    // Rebuilds stock (parallel to the sorted skus) from the snapshot and the segments after it
+    void recover(int[] skus, int[] stock) {
+        long start = System.nanoTime();
+        try {
+            readSnapshot(stock);
+            // Segments a crash kept us from deleting after the last snapshot
+            for (long number = firstSegment - 1; number >= 0 && Files.deleteIfExists(segmentPath(number)); number--) {
+                // deleted
+            }
+            ByteBuffer read = ByteBuffer.allocateDirect(1 << 16);
+            for (long number = firstSegment; number < segment; number++) {
+                try (FileChannel in = FileChannel.open(segmentPath(number), StandardOpenOption.READ)) {
+                    replay(in, in.size() / EVENT * EVENT, read, skus, stock);
+                }
+            }
+            long end = channel.size() / EVENT * EVENT;
+            replay(channel, end, read, skus, stock);
+            // Drop a torn tail so new events start on a record boundary
+            channel.truncate(end);
+            position = end;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        recoveryNanos = System.nanoTime() - start;
+    }
+
+    private void replay(FileChannel in, long end, ByteBuffer read, int[] skus, int[] stock) throws IOException {
+        for (long offset = 0; offset < end; ) {
+            read.clear();
+            read.limit((int) Math.min(read.capacity(), end - offset));
+            offset += in.read(read, offset);
+            read.flip();
+            while (read.remaining() >= EVENT) {
+                int index = Arrays.binarySearch(skus, read.getInt());
+                int delta = read.getInt();
+                if (index < 0) {
+                    throw new IllegalStateException("journal names a product this shard does not own");
+                }
+                stock[index] += delta;
+                replayed++;
+            }
+        }
+    }
+
+    // Returns the first segment the snapshot does not cover (0 without one), loading its stock
+    // into `stock` unless that is null
+    private long readSnapshot(int[] stock) throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return 0;
+        }
+        try (FileChannel in = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            ByteBuffer data = ByteBuffer.allocate(stock == null ? SNAPSHOT_HEADER : (int) in.size());
+            while (data.hasRemaining() && in.read(data) >= 0) {
+                // read fully
+            }
+            data.flip();
+            long first = data.getLong();
+            if (stock != null) {
+                if (data.getInt() != stock.length) {
+                    throw new IllegalStateException("snapshot is for a different catalog");
+                }
+                data.asIntBuffer().get(stock);
+            }
+            return first;
+        }
+    }
+
+    void append(int product, int delta) {
+        if (!buffer.hasRemaining()) {
+            write();
+        }
+        buffer.putInt(product).putInt(delta);
+        events++;
+    }
+
+    int buffered() {
+        return buffer.position() / EVENT;
+    }
+
+    // Makes every event appended so far durable
+    void flush() {
+        write();
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        flushes++;
+    }
+
+    private void write() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    // Writes the full stock array as of everything flushed so far, appends to a new segment
+    // from then on and deletes the segments the snapshot covers. The new segment's name is
+    // forced before events go to it, and the old snapshot is replaced atomically and forced
+    // before any segment is deleted, so a process crash or power loss at any point leaves a
+    // snapshot and every segment after it. A deletion lost to a crash is redone by recover().
+    void snapshot(int[] stock) {
+        flush();
+        Path temp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        ByteBuffer data = ByteBuffer.allocate(SNAPSHOT_HEADER + stock.length * 4);
+        data.putLong(segment + 1).putInt(stock.length);
+        data.asIntBuffer().put(stock);
+        data.clear();
+        try {
+            FileChannel next = openSegment(segment + 1);
+            forceDirectory();
+            channel.close();
+            channel = next;
+            segment++;
+            position = 0;
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
+                out.force(false);
+            }
+            Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory();
+            for (; firstSegment < segment; firstSegment++) {
+                Files.deleteIfExists(segmentPath(firstSegment));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        snapshots++;
+    }
+
+    // Bytes in the segments still on disk
+    long size() {
+        long size = 0;
+        try {
+            for (long number = firstSegment; number <= segment; number++) {
+                size += Files.size(segmentPath(number));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return size;
+    }
+
+    long events() {
+        return events;
+    }
+
+    long flushes() {
+        return flushes;
+    }
+
+    long snapshots() {
+        return snapshots;
+    }
+
+    long replayed() {
+        return replayed;
+    }
+
+    long recoveryNanos() {
+        return recoveryNanos;
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+            channel.close();
+        } catch (UncheckedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
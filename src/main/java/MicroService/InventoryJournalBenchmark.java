@@ -0,0 +1,196 @@
+package MicroService;
+
+import Common.LatencyHistogram;
+import MicroService.ECommerceSystem.InventoryStats;
+import MicroService.ECommerceSystem.OrderStats;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.pattern.Patterns;
+import com.typesafe.config.ConfigFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// recovery: time to rebuild one shard from journals of growing length, with and without snapshots.
+// load: orders/s, fsyncs and latency of journaled shards under the order flow for several
+// group-commit batch sizes (0 = no journal), then the time the shards take to recover.
+// Usage: InventoryJournalBenchmark recovery [events, e.g. 100000,1000000,10000000] [snapshotEvery] [skus]
+//        InventoryJournalBenchmark load [batches, e.g. 0,1,16,256] [customers] [seconds] [shards] [catalogSize]
+public class InventoryJournalBenchmark {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("load")) {
+            String[] batches = (args.length > 1 ? args[1] : "0,1,16,256").split(",");
+            int customers = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+            int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+            int shards = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+            int catalogSize = args.length > 5 ? Integer.parseInt(args[5]) : 1_000_000;
+            System.out.printf("%,d customers, %d shards, %,d SKUs, %ds per batch size%n",
+                    customers, shards, catalogSize, seconds);
+            System.out.printf("%6s %10s %10s %10s %10s %10s %12s %12s%n", "batch", "orders/s", "events/s",
+                    "fsyncs/s", "p50", "p99", "replayed", "recovery");
+            for (String batch : batches) {
+                load(Integer.parseInt(batch), customers, seconds, shards, catalogSize);
+            }
+            return;
+        }
+        String[] lengths = (args.length > 1 ? args[1] : "100000,1000000,10000000").split(",");
+        long snapshotEvery = args.length > 2 ? Long.parseLong(args[2]) : 100_000;
+        int skus = args.length > 3 ? Integer.parseInt(args[3]) : 250_000;
+        System.out.printf("one shard of %,d SKUs, snapshot every %,d events%n", skus, snapshotEvery);
+        System.out.printf("%12s %12s %12s %12s %12s %12s %12s%n", "events", "journal", "replayed", "recovery",
+                "journal*", "replayed*", "recovery*");
+        for (String length : lengths) {
+            recovery(Long.parseLong(length), snapshotEvery, skus);
+        }
+        System.out.println("* with snapshots");
+    }
+
+    private static void recovery(long length, long snapshotEvery, int skuCount) throws IOException {
+        int[] skus = new int[skuCount];
+        Arrays.setAll(skus, i -> i);
+        Path dir = Files.createTempDirectory("inventory-journal");
+        try {
+            InventoryJournal plain = write(dir.resolve("plain.journal"), length, 0, skus);
+            InventoryJournal snapshotted = write(dir.resolve("snapshotted.journal"), length, snapshotEvery, skus);
+            System.out.printf("%,12d %10.1fMB %,12d %10.1fms %10.1fMB %,12d %10.1fms%n", length,
+                    plain.size() / 1e6, plain.replayed(), plain.recoveryNanos() / 1e6,
+                    snapshotted.size() / 1e6, snapshotted.replayed(), snapshotted.recoveryNanos() / 1e6);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    // Journals `length` single-unit sales in batches of 1000, then recovers a fresh copy from it
+    private static InventoryJournal write(Path path, long length, long snapshotEvery, int[] skus) {
+        int[] stock = new int[skus.length];
+        Arrays.fill(stock, Integer.MAX_VALUE);
+        Random random = new Random(42);
+        try (InventoryJournal journal = new InventoryJournal(path, 1000)) {
+            for (long i = 1; i <= length; i++) {
+                int index = random.nextInt(skus.length);
+                stock[index]--;
+                journal.append(skus[index], -1);
+                if (i % 1000 == 0) {
+                    journal.flush();
+                }
+                if (snapshotEvery > 0 && i % snapshotEvery == 0) {
+                    journal.snapshot(stock);
+                }
+            }
+        }
+        int[] recovered = new int[skus.length];
+        Arrays.fill(recovered, Integer.MAX_VALUE);
+        InventoryJournal journal = new InventoryJournal(path, 1000);
+        journal.recover(skus, recovered);
+        journal.close();
+        if (!Arrays.equals(stock, recovered)) {
+            throw new IllegalStateException("recovered stock differs from the stock that was journaled");
+        }
+        return journal;
+    }
+
+    private static void load(int batch, int customers, int seconds, int shardCount, int catalogSize)
+            throws Exception {
+        Path dir = batch == 0 ? null : Files.createTempDirectory("inventory-journal");
+        ConsistentHashRing ring = new ConsistentHashRing(shardCount, 128);
+        try {
+            ActorSystem system = createSystem();
+            double ordersPerSecond;
+            double eventsPerSecond;
+            double flushesPerSecond;
+            LatencyHistogram latency = new LatencyHistogram();
+            try {
+                ActorRef[] shards = ECommerceSystem.inventoryShards(system, ring, catalogSize, Integer.MAX_VALUE,
+                        dir, Math.max(1, batch), 100_000);
+                ActorRef shipping = system.actorOf(Props.create(ECommerceSystem.ShippingService.class), "shipping");
+                ActorRef orderService = system.actorOf(ECommerceSystem.OrderService.props(shards, ring, shipping),
+                        "order");
+                for (int i = 0; i < customers; i++) {
+                    system.actorOf(ECommerceSystem.Customer.props(i, orderService, catalogSize, 1, latency),
+                            "customer" + i);
+                }
+
+                Thread.sleep(1000);
+                latency.reset();
+                OrderStats ordersBefore = ECommerceSystem.orderStats(orderService);
+                long[] journalBefore = journalCounts(shards);
+                long start = System.nanoTime();
+                Thread.sleep(seconds * 1000L);
+                OrderStats ordersAfter = ECommerceSystem.orderStats(orderService);
+                long[] journalAfter = journalCounts(shards);
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                ordersPerSecond = (ordersAfter.delivered - ordersBefore.delivered) / elapsed;
+                eventsPerSecond = (journalAfter[0] - journalBefore[0]) / elapsed;
+                flushesPerSecond = (journalAfter[1] - journalBefore[1]) / elapsed;
+            } finally {
+                terminate(system);
+            }
+
+            // Restart the shards alone on the journals just written
+            long replayed = 0;
+            long recoveryNanos = 0;
+            if (dir != null) {
+                system = createSystem();
+                try {
+                    for (ActorRef shard : ECommerceSystem.inventoryShards(system, ring, catalogSize,
+                            Integer.MAX_VALUE, dir, batch, 100_000)) {
+                        InventoryStats stats = stats(shard);
+                        replayed += stats.replayedEvents;
+                        recoveryNanos = Math.max(recoveryNanos, stats.recoveryNanos);
+                    }
+                } finally {
+                    terminate(system);
+                }
+            }
+            System.out.printf("%6s %,10.0f %,10.0f %,10.0f %10s %10s %,12d %10.1fms%n",
+                    batch == 0 ? "none" : String.valueOf(batch), ordersPerSecond, eventsPerSecond, flushesPerSecond,
+                    LatencyHistogram.format(latency.percentile(50)), LatencyHistogram.format(latency.percentile(99)),
+                    replayed, recoveryNanos / 1e6);
+        } finally {
+            if (dir != null) {
+                delete(dir);
+            }
+        }
+    }
+
+    private static ActorSystem createSystem() {
+        return ActorSystem.create("InventoryJournal",
+                ConfigFactory.parseString("akka.scheduler.tick-duration = 1ms").withFallback(ConfigFactory.load()));
+    }
+
+    private static void terminate(ActorSystem system) throws Exception {
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    private static InventoryStats stats(ActorRef shard) throws Exception {
+        return (InventoryStats) Patterns.ask(shard, new ECommerceSystem.GetInventoryStats(), TIMEOUT)
+                .toCompletableFuture().get();
+    }
+
+    private static long[] journalCounts(ActorRef[] shards) throws Exception {
+        long[] counts = new long[2];
+        for (ActorRef shard : shards) {
+            InventoryStats stats = stats(shard);
+            counts[0] += stats.journalEvents;
+            counts[1] += stats.journalFlushes;
+        }
+        return counts;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
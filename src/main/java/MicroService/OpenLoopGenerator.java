@@ -0,0 +1,63 @@
+package MicroService;
+
+import MicroService.ECommerceSystem.Customer;
+import akka.actor.AbstractActorWithTimers;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+
+import java.time.Duration;
+import java.util.Random;
+
+// Places orders for random customers at Poisson arrival times. Arrivals are kept in absolute
+// time and each 1ms tick sends everything that has come due, so the offered rate does not
+// depend on timer precision or on how far behind the order flow is.
+class OpenLoopGenerator extends AbstractActorWithTimers {
+    private static final Object TICK = "tick";
+
+    private final ActorRef orderService;
+    private final ActorRef[] customers;
+    private final int catalogSize;
+    private final int lines;
+    private final double meanGapNanos;
+    private final Random random = new Random();
+    private long nextArrivalNanos;
+
+    OpenLoopGenerator(ActorRef orderService, ActorRef[] customers, int catalogSize, int lines, double ordersPerSecond) {
+        if (ordersPerSecond <= 0) {
+            throw new IllegalArgumentException("ordersPerSecond must be positive");
+        }
+        this.orderService = orderService;
+        this.customers = customers;
+        this.catalogSize = catalogSize;
+        this.lines = lines;
+        this.meanGapNanos = 1e9 / ordersPerSecond;
+    }
+
+    static Props props(ActorRef orderService, ActorRef[] customers, int catalogSize, int lines,
+                       double ordersPerSecond) {
+        return Props.create(OpenLoopGenerator.class,
+                () -> new OpenLoopGenerator(orderService, customers, catalogSize, lines, ordersPerSecond));
+    }
+
+    @Override
+    public void preStart() {
+        nextArrivalNanos = System.nanoTime();
+        getTimers().startTimerAtFixedRate(TICK, TICK, Duration.ofMillis(1));
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .matchEquals(TICK, msg -> handleTick())
+                .build();
+    }
+
+    private void handleTick() {
+        long now = System.nanoTime();
+        while (nextArrivalNanos <= now) {
+            ActorRef customer = customers[random.nextInt(customers.length)];
+            Customer.placeOrder(random, customer, orderService, catalogSize, lines, nextArrivalNanos);
+            nextArrivalNanos += (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package MicroService;
+
+import Common.LatencyHistogram;
+import MicroService.ECommerceSystem.Flow;
+import MicroService.ECommerceSystem.InventoryStats;
+import MicroService.ECommerceSystem.OrderStats;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.pattern.Patterns;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// End-to-end order latency (PlaceOrder to Delivered) and orders/sec of the two-step
+// check/confirm flow against single-round-trip reservations. A small catalog with little
+// stock shows the two-step flow overselling; a large one measures throughput.
+// Usage: OrderFlowBenchmark [flows, e.g. two_step,reserve] [customers] [catalogSize] [seconds] [stock] [lines] [shards]
+public class OrderFlowBenchmark {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    public static void main(String[] args) throws Exception {
+        String[] flows = (args.length > 0 ? args[0] : "two_step,reserve").split(",");
+        int customers = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int catalogSize = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int stock = args.length > 4 ? Integer.parseInt(args[4]) : 1_000_000;
+        int lines = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+        int shards = args.length > 6 ? Integer.parseInt(args[6]) : 4;
+
+        System.out.printf("%,d customers, %,d SKUs x %,d stock, %d line(s) per order, %d shards, %ds per flow%n",
+                customers, catalogSize, stock, lines, shards, seconds);
+        System.out.printf("%10s %12s %12s %10s %10s %10s %10s%n", "flow", "orders/s", "rejected/s",
+                "oversold", "p50", "p99", "p999");
+        for (String flow : flows) {
+            run(Flow.valueOf(flow.toUpperCase()), customers, catalogSize, seconds, stock, lines, shards);
+        }
+    }
+
+    private static void run(Flow flow, int customers, int catalogSize, int seconds, int stock, int lines,
+                            int shardCount) throws Exception {
+        ActorSystem system = ActorSystem.create("OrderFlow");
+        try {
+            ConsistentHashRing ring = new ConsistentHashRing(shardCount, 128);
+            ActorRef[] shards = ECommerceSystem.inventoryShards(system, ring, catalogSize, stock);
+            ActorRef shippingService = system.actorOf(Props.create(ECommerceSystem.ShippingService.class), "shipping");
+            ActorRef orderService = system.actorOf(
+                    ECommerceSystem.OrderService.props(shards, ring, shippingService, flow), "order");
+            LatencyHistogram latency = new LatencyHistogram();
+            for (int i = 0; i < customers; i++) {
+                system.actorOf(ECommerceSystem.Customer.props(i, orderService, catalogSize, lines, latency),
+                        "customer" + i);
+            }
+
+            Thread.sleep(1000);
+            latency.reset();
+            OrderStats before = ECommerceSystem.orderStats(orderService);
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            OrderStats after = ECommerceSystem.orderStats(orderService);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            long oversold = 0;
+            for (ActorRef shard : shards) {
+                oversold += ((InventoryStats) Patterns.ask(shard, new ECommerceSystem.GetInventoryStats(), TIMEOUT)
+                        .toCompletableFuture().get()).oversold;
+            }
+            System.out.printf("%10s %,12.0f %,12.0f %,10d %10s %10s %10s%n", flow.name().toLowerCase(),
+                    (after.delivered - before.delivered) / elapsed, (after.rejected - before.rejected) / elapsed,
+                    oversold, LatencyHistogram.format(latency.percentile(50)),
+                    LatencyHistogram.format(latency.percentile(99)),
+                    LatencyHistogram.format(latency.percentile(99.9)));
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+}
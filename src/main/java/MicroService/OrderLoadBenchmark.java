@@ -0,0 +1,98 @@
+package MicroService;
+
+import Common.LatencyHistogram;
+import MicroService.ECommerceSystem.Customer;
+import MicroService.ECommerceSystem.InventoryStats;
+import MicroService.ECommerceSystem.OrderStats;
+import MicroService.ECommerceSystem.ShippingStats;
+import MicroService.ECommerceSystem.ThinkTime;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.pattern.Patterns;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Load test of the order flow with many customers. Closed loop: every customer orders, waits
+// for delivery and thinks for a fixed, uniform or exponential time with the given mean.
+// Open loop: orders arrive as a Poisson process at a fixed rate whatever the latency, each for
+// a random customer, and latency is measured from the scheduled arrival time so a backlog
+// shows up in the percentiles instead of slowing the arrivals down.
+// Usage: OrderLoadBenchmark [customers] [seconds] [fixed|uniform|exponential|open]
+//                           [meanThinkMs or orders/s when open] [shards] [catalogSize] [lines]
+public class OrderLoadBenchmark {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    public static void main(String[] args) throws Exception {
+        int customers = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String mode = args.length > 2 ? args[2] : "exponential";
+        double load = args.length > 3 ? Double.parseDouble(args[3]) : 1000;
+        int shardCount = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+        int catalogSize = args.length > 5 ? Integer.parseInt(args[5]) : 1_000_000;
+        int lines = args.length > 6 ? Integer.parseInt(args[6]) : 1;
+        boolean open = mode.equals("open");
+        ThinkTime think = open ? null : ThinkTime.valueOf(mode.toUpperCase());
+
+        ActorSystem system = ActorSystem.create("OrderLoad",
+                ConfigFactory.parseString("akka.scheduler.tick-duration = 1ms").withFallback(ConfigFactory.load()));
+        try {
+            ConsistentHashRing ring = new ConsistentHashRing(shardCount, 128);
+            ActorRef[] shards = ECommerceSystem.inventoryShards(system, ring, catalogSize, Integer.MAX_VALUE);
+            ActorRef shippingService = system.actorOf(Props.create(ECommerceSystem.ShippingService.class), "shipping");
+            ActorRef orderService = system.actorOf(ECommerceSystem.OrderService.props(shards, ring, shippingService),
+                    "order");
+            LatencyHistogram latency = new LatencyHistogram();
+            long meanThinkNanos = (long) (load * 1e6);
+            ActorRef[] customerRefs = new ActorRef[customers];
+            for (int i = 0; i < customers; i++) {
+                customerRefs[i] = system.actorOf(
+                        Customer.props(i, orderService, catalogSize, lines, latency, think, meanThinkNanos),
+                        "customer" + i);
+            }
+            if (open) {
+                system.actorOf(OpenLoopGenerator.props(orderService, customerRefs, catalogSize, lines, load),
+                        "generator");
+                System.out.printf("%,d customers, open loop at %,.0f orders/s, %d shards, %,d SKUs, %d line(s)%n",
+                        customers, load, shardCount, catalogSize, lines);
+            } else {
+                System.out.printf("%,d customers, %s think time of %.1fms mean, %d shards, %,d SKUs, %d line(s)%n",
+                        customers, mode, load, shardCount, catalogSize, lines);
+            }
+
+            Thread.sleep(2000);
+            latency.reset();
+            long[] before = counts(orderService, shards, shippingService);
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            long[] after = counts(orderService, shards, shippingService);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("orders/s by service: order %,.0f, inventory %,.0f, shipping %,.0f%n",
+                    (after[0] - before[0]) / elapsed, (after[1] - before[1]) / elapsed,
+                    (after[2] - before[2]) / elapsed);
+            System.out.println("order latency " + latency);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    // Orders completed by OrderService, reservations answered by all shards, deliveries scheduled
+    private static long[] counts(ActorRef orderService, ActorRef[] shards, ActorRef shippingService)
+            throws Exception {
+        OrderStats orders = (OrderStats) ask(orderService, new ECommerceSystem.GetOrderStats());
+        long inventory = 0;
+        for (ActorRef shard : shards) {
+            InventoryStats stats = (InventoryStats) ask(shard, new ECommerceSystem.GetInventoryStats());
+            inventory += stats.reserved + stats.rejected;
+        }
+        ShippingStats shipping = (ShippingStats) ask(shippingService, new ECommerceSystem.GetShippingStats());
+        return new long[]{orders.delivered + orders.rejected, inventory, shipping.scheduled};
+    }
+
+    private static Object ask(ActorRef actor, Object message) throws Exception {
+        return Patterns.ask(actor, message, TIMEOUT).toCompletableFuture().get();
+    }
+}
@@ -0,0 +1,75 @@
+package MicroService;
+
+import Common.LatencyHistogram;
+import MicroService.ECommerceSystem.Flow;
+import MicroService.ECommerceSystem.OrderService;
+import MicroService.ECommerceSystem.OrderStats;
+import MicroService.ECommerceSystem.PoolKind;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+
+import java.util.concurrent.TimeUnit;
+
+// Orders/sec and order latency with OrderService deployed as one actor ("single") or as a
+// pool of 1..N routees on order-dispatcher, under saturating browse-loop customers.
+// Usage: OrderPoolBenchmark [kinds, e.g. single,balancing,smallest_mailbox,round_robin]
+//                           [routees, e.g. 1,2,4,8] [customers] [seconds] [shards] [lines]
+public class OrderPoolBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String[] kinds = (args.length > 0 ? args[0] : "single,balancing,smallest_mailbox").split(",");
+        String[] routees = (args.length > 1 ? args[1] : "1,2,4,8").split(",");
+        int customers = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int shards = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+        int lines = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+
+        System.out.printf("%,d customers, %d shards, %d line(s) per order, %d cores, %ds per run%n",
+                customers, shards, lines, Runtime.getRuntime().availableProcessors(), seconds);
+        System.out.printf("%18s %8s %12s %10s %10s%n", "pool", "routees", "orders/s", "p50", "p99");
+        for (String kind : kinds) {
+            if (kind.equals("single")) {
+                run(null, 1, customers, seconds, shards, lines);
+                continue;
+            }
+            for (String n : routees) {
+                run(PoolKind.valueOf(kind.toUpperCase()), Integer.parseInt(n), customers, seconds, shards, lines);
+            }
+        }
+    }
+
+    private static void run(PoolKind kind, int routees, int customers, int seconds, int shardCount, int lines)
+            throws Exception {
+        ActorSystem system = ActorSystem.create("OrderPool");
+        try {
+            ConsistentHashRing ring = new ConsistentHashRing(shardCount, 128);
+            int catalogSize = 1_000_000;
+            ActorRef[] shards = ECommerceSystem.inventoryShards(system, ring, catalogSize, Integer.MAX_VALUE);
+            ActorRef shipping = system.actorOf(Props.create(ECommerceSystem.ShippingService.class), "shipping");
+            Props props = kind == null
+                    ? OrderService.props(shards, ring, shipping)
+                    : OrderService.pool(kind, routees, shards, ring, shipping, Flow.RESERVE);
+            ActorRef orderService = system.actorOf(props, "order");
+            LatencyHistogram latency = new LatencyHistogram();
+            for (int i = 0; i < customers; i++) {
+                system.actorOf(ECommerceSystem.Customer.props(i, orderService, catalogSize, lines, latency),
+                        "customer" + i);
+            }
+
+            Thread.sleep(1000);
+            latency.reset();
+            OrderStats before = ECommerceSystem.orderStats(orderService);
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            OrderStats after = ECommerceSystem.orderStats(orderService);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%18s %8d %,12.0f %10s %10s%n", kind == null ? "single" : kind.name().toLowerCase(),
+                    routees, (after.delivered - before.delivered) / elapsed,
+                    LatencyHistogram.format(latency.percentile(50)), LatencyHistogram.format(latency.percentile(99)));
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package MicroService;
+
+import Common.LatencyHistogram;
+import MicroService.ECommerceSystem.Customer;
+import MicroService.ECommerceSystem.ShippingStats;
+import MicroService.ECommerceSystem.ThinkTime;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.pattern.Patterns;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Backend calls saved and latency added by ShippingService batching, for several batching
+// windows under thousands of customers with exponential think time. Window 0 is one call
+// per delivery. "held" is the time a delivery waits in the batch; "order" is end to end.
+// callCostUs is each backend call's latency; the call holds no thread while it waits.
+// Usage: ShippingBatchBenchmark [windowsMs, e.g. 0,1,5,20] [maxBatch] [customers] [meanThinkMs]
+//                               [seconds] [callCostUs]
+public class ShippingBatchBenchmark {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    public static void main(String[] args) throws Exception {
+        String[] windows = (args.length > 0 ? args[0] : "0,1,5,20").split(",");
+        int maxBatch = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int customers = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        double thinkMs = args.length > 3 ? Double.parseDouble(args[3]) : 500;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+        long callCostNanos = (args.length > 5 ? Long.parseLong(args[5]) : 2000) * 1000;
+
+        System.out.printf("%,d customers thinking %.0fms on average, batches of up to %d, %dus per backend call%n",
+                customers, thinkMs, maxBatch, callCostNanos / 1000);
+        System.out.printf("%8s %10s %10s %8s %8s %10s %10s %10s %10s%n", "window", "orders/s", "calls/s",
+                "saved", "batch", "held p50", "held p99", "order p50", "order p99");
+        for (String window : windows) {
+            run(Integer.parseInt(window), maxBatch, customers, thinkMs, seconds, callCostNanos);
+        }
+    }
+
+    private static void run(int windowMs, int maxBatch, int customers, double thinkMs, int seconds,
+                            long callCostNanos) throws Exception {
+        ActorSystem system = ActorSystem.create("ShippingBatch",
+                ConfigFactory.parseString("akka.scheduler.tick-duration = 1ms").withFallback(ConfigFactory.load()));
+        try {
+            ConsistentHashRing ring = new ConsistentHashRing(4, 128);
+            int catalogSize = 1_000_000;
+            ActorRef[] shards = ECommerceSystem.inventoryShards(system, ring, catalogSize, Integer.MAX_VALUE);
+            ActorRef shipping = system.actorOf(ECommerceSystem.ShippingService.props(Duration.ofMillis(windowMs),
+                    maxBatch, callCostNanos), "shipping");
+            ActorRef orderService = system.actorOf(ECommerceSystem.OrderService.props(shards, ring, shipping),
+                    "order");
+            LatencyHistogram latency = new LatencyHistogram();
+            for (int i = 0; i < customers; i++) {
+                system.actorOf(Customer.props(i, orderService, catalogSize, 1, latency, ThinkTime.EXPONENTIAL,
+                        (long) (thinkMs * 1e6)), "customer" + i);
+            }
+
+            Thread.sleep(2000);
+            ShippingStats before = stats(shipping);
+            before.batchingDelay.reset();
+            latency.reset();
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            ShippingStats after = stats(shipping);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            long deliveries = after.scheduled - before.scheduled;
+            long calls = after.backendCalls - before.backendCalls;
+            System.out.printf("%6dms %,10.0f %,10.0f %7.1f%% %8.1f %10s %10s %10s %10s%n", windowMs,
+                    deliveries / elapsed, calls / elapsed, 100.0 * (deliveries - calls) / Math.max(1, deliveries),
+                    (double) deliveries / Math.max(1, calls),
+                    LatencyHistogram.format(after.batchingDelay.percentile(50)),
+                    LatencyHistogram.format(after.batchingDelay.percentile(99)),
+                    LatencyHistogram.format(latency.percentile(50)), LatencyHistogram.format(latency.percentile(99)));
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static ShippingStats stats(ActorRef shipping) throws Exception {
+        return (ShippingStats) Patterns.ask(shipping, new ECommerceSystem.GetShippingStats(), TIMEOUT)
+                .toCompletableFuture().get();
+    }
+}
@@ -0,0 +1,74 @@
+package ProducerConsumer;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.pattern.Patterns;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Items/sec of the one-at-a-time handshake against the credit window and the off-heap ring.
+// The handshake and the credit window move no item data: an item is a slot grant and its ack,
+// so their ratio is the saving in control messages. Only the ring copies 8-byte items.
+// Usage: Benchmark [bufferLength] [credit] [seconds]   (the ring rounds bufferLength up to a power of two)
+public class Benchmark {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    public static void main(String[] args) throws Exception {
+        int bufferLength = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int credit = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        double handshake = run(BufferManagerActor.props(bufferLength, 1), seconds, false);
+        double window = run(BufferManagerActor.props(bufferLength, credit), seconds, false);
+        int ringCapacity = Integer.highestOneBit(bufferLength - 1) << 1;
+        double ring = run(BufferManagerActor.ringProps(Math.max(1, ringCapacity)), seconds, true);
+
+        System.out.printf("bufferLength=%d credit=%d%n", bufferLength, credit);
+        System.out.printf("handshake: %,.0f items/sec (slot grants, no payload)%n", handshake);
+        System.out.printf("credit:    %,.0f items/sec (%.1fx, slot grants, no payload)%n", window, window / handshake);
+        System.out.printf("ring:      %,.0f items/sec (%.1fx, 8-byte items copied)%n", ring, ring / handshake);
+    }
+
+    // With checkRing, also verifies that the consumer read exactly the values 0, 1, 2, ... the
+    // producer wrote, in order, by comparing its checksum with n(n-1)/2
+    static double run(Props bufferProps, int seconds, boolean checkRing) throws Exception {
+        ActorSystem system = ActorSystem.create("ProducerConsumerBenchmark");
+        try {
+            ActorRef buffer = system.actorOf(bufferProps, "buffer");
+            ActorRef producer = system.actorOf(ProducerActor.props(), "producer");
+            ActorRef consumer = system.actorOf(ConsumerActor.props(), "consumer");
+
+            buffer.tell(new BufferManagerActor.Setup(producer, consumer), ActorRef.noSender());
+            producer.tell(new ProducerActor.Setup(buffer), ActorRef.noSender());
+            consumer.tell(new ConsumerActor.Setup(buffer), ActorRef.noSender());
+
+            buffer.tell(new BufferManagerActor.Initial(), ActorRef.noSender());
+            producer.tell(new ProducerActor.Initial(), ActorRef.noSender());
+            consumer.tell(new ConsumerActor.Initial(), ActorRef.noSender());
+
+            // Warm up for one second before the measured window
+            Thread.sleep(1000);
+            long before = consumed(consumer).items;
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            ConsumerActor.Consumed after = consumed(consumer);
+            long elapsed = System.nanoTime() - start;
+            if (checkRing) {
+                long expected = after.items * (after.items - 1) / 2;
+                System.out.printf("ring checksum: %,d over %,d items (%s)%n", after.checksum, after.items,
+                        after.checksum == expected ? "ok" : "MISMATCH, expected " + expected);
+            }
+            return (after.items - before) * 1e9 / elapsed;
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static ConsumerActor.Consumed consumed(ActorRef consumer) throws Exception {
+        return (ConsumerActor.Consumed) Patterns.ask(consumer, new ConsumerActor.GetConsumed(), TIMEOUT)
+                .toCompletableFuture().get();
+    }
+}
@@ -22,20 +22,77 @@ public class BufferManagerActor extends AbstractActor {
     public static class GiveMeNextConsume {}
     public static class AckProduce {}
     public static class AckConsume {}
+    public static class AckProduceBatch {
+        public final int count;
+        public AckProduceBatch(int count) {
+            this.count = count;
+        }
+    }
+    public static class AckConsumeBatch {
+        public final int count;
+        public AckConsumeBatch(int count) {
+            this.count = count;
+        }
+    }
+    public static class UseRing {
+        public final OffHeapRing ring;
+        public UseRing(OffHeapRing ring) {
+            this.ring = ring;
+        }
+    }
+    public static final class RingNotEmpty {
+        public static final RingNotEmpty INSTANCE = new RingNotEmpty();
+        private RingNotEmpty() {}
+    }
+    public static final class RingNotFull {
+        public static final RingNotFull INSTANCE = new RingNotFull();
+        private RingNotFull() {}
+    }
 
     // State (1:1 with Rebeca)
     private boolean empty;
     private boolean full;
     private boolean producerWaiting;
     private boolean consumerWaiting;
-    private int bufferLength;
+    private final int bufferLength;
     private int nextProduce;
     private int nextConsume;
     private ActorRef producer;
     private ActorRef consumer;
 
+    // Credit window: how many slots one grant may cover (1 = Rebeca's one-at-a-time handshake)
+    private final int credit;
+    private int size;
+
+    // Opt-in ring transport: items bypass this actor, which only relays wake-ups
+    private final OffHeapRing ring;
+
+    public BufferManagerActor(int bufferLength, int credit) {
+        if (bufferLength < 1 || credit < 1 || credit > bufferLength) {
+            throw new IllegalArgumentException("need 1 <= credit <= bufferLength");
+        }
+        this.bufferLength = bufferLength;
+        this.credit = credit;
+        this.ring = null;
+    }
+
+    public BufferManagerActor(OffHeapRing ring) {
+        this.bufferLength = ring.capacity();
+        this.credit = 1;
+        this.ring = ring;
+    }
+
     public static Props props() {
-        return Props.create(BufferManagerActor.class);
+        return props(2, 1);
+    }
+
+    public static Props props(int bufferLength, int credit) {
+        return Props.create(BufferManagerActor.class, () -> new BufferManagerActor(bufferLength, credit));
+    }
+
+    // Only valid when producer and consumer run in the same JVM as the buffer
+    public static Props ringProps(int capacity) {
+        return Props.create(BufferManagerActor.class, () -> new BufferManagerActor(new OffHeapRing(capacity)));
     }
 
     @Override
@@ -47,6 +104,10 @@ public class BufferManagerActor extends AbstractActor {
                 .match(GiveMeNextConsume.class, this::handleGiveMeNextConsume)
                 .match(AckProduce.class, this::handleAckProduce)
                 .match(AckConsume.class, this::handleAckConsume)
+                .match(AckProduceBatch.class, this::handleAckProduceBatch)
+                .match(AckConsumeBatch.class, this::handleAckConsumeBatch)
+                .match(RingNotEmpty.class, msg -> consumer.tell(ConsumerActor.BeginConsume.INSTANCE, getSelf()))
+                .match(RingNotFull.class, msg -> producer.tell(ProducerActor.BeginProduce.INSTANCE, getSelf()))
                 .build();
     }
 
@@ -56,159 +117,91 @@ public class BufferManagerActor extends AbstractActor {
     }
 
     private void handleInitial(Initial msg) {
-        bufferLength = 2;
         empty = true;
         full = false;
         producerWaiting = false;
         consumerWaiting = false;
         nextProduce = 0;
         nextConsume = 0;
+        size = 0;
     }
 
     private void handleGiveMeNextProduce(GiveMeNextProduce msg) {
-        if (!full) {
-            producer.tell(new ProducerActor.Produce(nextProduce), getSelf());
+        if (ring != null) {
+            getSender().tell(new UseRing(ring), getSelf());
+        } else if (!full) {
+            grantProduce();
+        } else {
+            producerWaiting = true;
         }
     }
 
     private void handleGiveMeNextConsume(GiveMeNextConsume msg) {
-        if (!empty) {
-            consumer.tell(new ConsumerActor.Consume(nextConsume), getSelf());
+        if (ring != null) {
+            getSender().tell(new UseRing(ring), getSelf());
+        } else if (!empty) {
+            grantConsume();
         } else {
             consumerWaiting = true;
         }
     }
 
     private void handleAckProduce(AckProduce msg) {
-        nextProduce = (nextProduce + 1) % bufferLength;
-        if (nextProduce == nextConsume) {
+        produced(1);
+    }
+
+    private void handleAckConsume(AckConsume msg) {
+        consumed(1);
+    }
+
+    private void handleAckProduceBatch(AckProduceBatch msg) {
+        produced(msg.count);
+    }
+
+    private void handleAckConsumeBatch(AckConsumeBatch msg) {
+        consumed(msg.count);
+    }
+
+    private void produced(int count) {
+        nextProduce = (nextProduce + count) % bufferLength;
+        size += count;
+        if (size == bufferLength) {
             full = true;
         }
         empty = false;
         if (consumerWaiting) {
-            consumer.tell(new ConsumerActor.Consume(nextConsume), getSelf());
+            grantConsume();
             consumerWaiting = false;
         }
     }
 
-    private void handleAckConsume(AckConsume msg) {
-        nextConsume = (nextConsume + 1) % bufferLength;
-        if (nextConsume == nextProduce) {
+    private void consumed(int count) {
+        nextConsume = (nextConsume + count) % bufferLength;
+        size -= count;
+        if (size == 0) {
             empty = true;
         }
         full = false;
         if (producerWaiting) {
-            producer.tell(new ProducerActor.Produce(nextProduce), getSelf());
+            grantProduce();
             producerWaiting = false;
         }
     }
-}
-
-class ProducerActor extends AbstractActor {
-    // Messages
-    public static class Setup {
-        public final ActorRef buffer;
 
-        public Setup(ActorRef buffer) {
-            this.buffer = buffer;
-        }
-    }
-
-    public static class Initial {}
-    public static class Produce {
-        public final int bufNum;
-        public Produce(int bufNum) {
-            this.bufNum = bufNum;
-        }
-    }
-    public static class BeginProduce {}
-
-    // State (matches empty Rebeca statevars)
-    private ActorRef buffer;
-
-    public static Props props() {
-        return Props.create(ProducerActor.class);
-    }
-
-    @Override
-    public Receive createReceive() {
-        return receiveBuilder()
-                .match(Setup.class, this::handleSetup)
-                .match(Initial.class, this::handleInitial)
-                .match(Produce.class, this::handleProduce)
-                .match(BeginProduce.class, this::handleBeginProduce)
-                .build();
-    }
-
-    private void handleSetup(Setup setup) {
-        this.buffer = setup.buffer;
-    }
-
-    private void handleInitial(Initial msg) {
-        getSelf().tell(new BeginProduce(), getSelf());
-    }
-
-    private void handleProduce(Produce msg) {
-        buffer.tell(new BufferManagerActor.AckProduce(), getSelf());
-        getSelf().tell(new BeginProduce(), getSelf());
-    }
-
-    private void handleBeginProduce(BeginProduce msg) {
-        buffer.tell(new BufferManagerActor.GiveMeNextProduce(), getSelf());
-    }
-}
-
-class ConsumerActor extends AbstractActor {
-    // Messages
-    public static class Setup {
-        public final ActorRef buffer;
-
-        public Setup(ActorRef buffer) {
-            this.buffer = buffer;
+    // A grant only covers free (resp. filled) slots, so the producer and consumer windows never overlap
+    private void grantProduce() {
+        if (credit == 1) {
+            producer.tell(new ProducerActor.Produce(nextProduce), getSelf());
+        } else {
+            producer.tell(new ProducerActor.ProduceBatch(nextProduce, Math.min(credit, bufferLength - size)), getSelf());
         }
     }
 
-    public static class Initial {}
-    public static class Consume {
-        public final int bufNum;
-        public Consume(int bufNum) {
-            this.bufNum = bufNum;
+    private void grantConsume() {
+        if (credit == 1) {
+            consumer.tell(new ConsumerActor.Consume(nextConsume), getSelf());
+        } else {
+            consumer.tell(new ConsumerActor.ConsumeBatch(nextConsume, Math.min(credit, size)), getSelf());
         }
     }
-    public static class BeginConsume {}
-
-    // State (matches empty Rebeca statevars)
-    private ActorRef buffer;
-
-    public static Props props() {
-        return Props.create(ConsumerActor.class);
-    }
-
-    @Override
-    public Receive createReceive() {
-        return receiveBuilder()
-                .match(Setup.class, this::handleSetup)
-                .match(Initial.class, this::handleInitial)
-                .match(Consume.class, this::handleConsume)
-                .match(BeginConsume.class, this::handleBeginConsume)
-                .build();
-    }
-
-    private void handleSetup(Setup setup) {
-        this.buffer = setup.buffer;
-    }
-
-    private void handleInitial(Initial msg) {
-        getSelf().tell(new BeginConsume(), getSelf());
-    }
-
-    private void handleConsume(Consume msg) {
-        buffer.tell(new BufferManagerActor.AckConsume(), getSelf());
-        getSelf().tell(new BeginConsume(), getSelf());
-    }
-
-    private void handleBeginConsume(BeginConsume msg) {
-        buffer.tell(new BufferManagerActor.GiveMeNextConsume(), getSelf());
-    }
 }
-
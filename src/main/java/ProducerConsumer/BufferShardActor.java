@@ -0,0 +1,255 @@
+package ProducerConsumer;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+
+import java.util.ArrayDeque;
+
+// One shard of a multi-producer / multi-consumer buffer. Producers and consumers talk to
+// their home shard with the usual BufferManagerActor requests; a request the home shard
+// cannot serve is forwarded round the other shards (consumers steal filled slots, producers
+// spill into free ones) and parked at home only when no shard could serve it. A shard that
+// starts parking a kind of request registers with every other shard; the first of them to have
+// slots of that kind wakes it, and it hands its parked requests over. Registering after parking
+// means a shard that gains slots meanwhile cannot miss the waiter.
+public class BufferShardActor extends AbstractActor {
+    // Messages
+    public static class Setup {
+        public final ActorRef[] shards;
+        public final int index;
+
+        public Setup(ActorRef[] shards, int index) {
+            this.shards = shards;
+            this.index = index;
+        }
+    }
+
+    public static class Forward {
+        public final ActorRef requester;
+        public final boolean produce;
+        public final int origin;
+        public final int hops;
+
+        public Forward(ActorRef requester, boolean produce, int origin, int hops) {
+            this.requester = requester;
+            this.produce = produce;
+            this.origin = origin;
+            this.hops = hops;
+        }
+    }
+
+    public static class Unserved {
+        public final ActorRef requester;
+        public final boolean produce;
+
+        public Unserved(ActorRef requester, boolean produce) {
+            this.requester = requester;
+            this.produce = produce;
+        }
+    }
+
+    public static class Waiting {
+        public final int origin;
+        public final boolean produce;
+
+        public Waiting(int origin, boolean produce) {
+            this.origin = origin;
+            this.produce = produce;
+        }
+    }
+
+    public static class Wake {
+        public final int from;
+        public final boolean produce;
+
+        public Wake(int from, boolean produce) {
+            this.from = from;
+            this.produce = produce;
+        }
+    }
+
+    // State
+    private final int bufferLength;
+    private final int credit;
+    private ActorRef[] shards;
+    private int index;
+    private int size;
+    private int grantedFree;
+    private int grantedFilled;
+    private int nextProduce;
+    private int nextConsume;
+    private final ArrayDeque<ActorRef> waitingProducers = new ArrayDeque<>();
+    private final ArrayDeque<ActorRef> waitingConsumers = new ArrayDeque<>();
+    // Shards with parked producers / consumers that have registered here
+    private boolean[] starvedProducers;
+    private boolean[] starvedConsumers;
+
+    public BufferShardActor(int bufferLength, int credit) {
+        if (bufferLength < 1 || credit < 1 || credit > bufferLength) {
+            throw new IllegalArgumentException("need 1 <= credit <= bufferLength");
+        }
+        this.bufferLength = bufferLength;
+        this.credit = credit;
+    }
+
+    public static Props props(int bufferLength, int credit) {
+        return Props.create(BufferShardActor.class, () -> new BufferShardActor(bufferLength, credit));
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Setup.class, this::handleSetup)
+                .match(BufferManagerActor.GiveMeNextProduce.class, msg -> request(getSender(), true))
+                .match(BufferManagerActor.GiveMeNextConsume.class, msg -> request(getSender(), false))
+                .match(BufferManagerActor.AckProduce.class, msg -> produced(1))
+                .match(BufferManagerActor.AckConsume.class, msg -> consumed(1))
+                .match(BufferManagerActor.AckProduceBatch.class, msg -> produced(msg.count))
+                .match(BufferManagerActor.AckConsumeBatch.class, msg -> consumed(msg.count))
+                .match(Forward.class, this::handleForward)
+                .match(Unserved.class, this::handleUnserved)
+                .match(Waiting.class, this::handleWaiting)
+                .match(Wake.class, this::handleWake)
+                .build();
+    }
+
+    private void handleSetup(Setup setup) {
+        this.shards = setup.shards;
+        this.index = setup.index;
+        this.starvedProducers = new boolean[shards.length];
+        this.starvedConsumers = new boolean[shards.length];
+    }
+
+    private void request(ActorRef requester, boolean produce) {
+        if (tryGrant(requester, produce)) {
+            return;
+        }
+        if (shards.length > 1) {
+            next().tell(new Forward(requester, produce, index, 1), getSelf());
+        } else {
+            park(requester, produce);
+        }
+    }
+
+    private void handleForward(Forward msg) {
+        if (tryGrant(msg.requester, msg.produce)) {
+            return;
+        }
+        if (msg.hops + 1 < shards.length) {
+            next().tell(new Forward(msg.requester, msg.produce, msg.origin, msg.hops + 1), getSelf());
+        } else {
+            shards[msg.origin].tell(new Unserved(msg.requester, msg.produce), getSelf());
+        }
+    }
+
+    // The home shard may have changed while the request was travelling, so look again before parking
+    private void handleUnserved(Unserved msg) {
+        if (!tryGrant(msg.requester, msg.produce)) {
+            park(msg.requester, msg.produce);
+        }
+    }
+
+    private void park(ActorRef requester, boolean produce) {
+        ArrayDeque<ActorRef> waiting = produce ? waitingProducers : waitingConsumers;
+        waiting.add(requester);
+        if (waiting.size() == 1) {
+            for (int i = 0; i < shards.length; i++) {
+                if (i != index) {
+                    shards[i].tell(new Waiting(index, produce), getSelf());
+                }
+            }
+        }
+    }
+
+    private void handleWaiting(Waiting msg) {
+        if (available(msg.produce) > 0) {
+            shards[msg.origin].tell(new Wake(index, msg.produce), getSelf());
+        } else {
+            (msg.produce ? starvedProducers : starvedConsumers)[msg.origin] = true;
+        }
+    }
+
+    // Hand every parked request of that kind to the shard that has slots for it. Each gets one
+    // attempt there; one it cannot serve comes back as Unserved and parks again.
+    private void handleWake(Wake msg) {
+        ArrayDeque<ActorRef> waiting = msg.produce ? waitingProducers : waitingConsumers;
+        while (!waiting.isEmpty()) {
+            ActorRef requester = waiting.poll();
+            if (!tryGrant(requester, msg.produce)) {
+                shards[msg.from].tell(new Forward(requester, msg.produce, index, shards.length - 1), getSelf());
+            }
+        }
+    }
+
+    private void produced(int count) {
+        grantedFree -= count;
+        size += count;
+        while (!waitingConsumers.isEmpty() && tryGrant(waitingConsumers.peek(), false)) {
+            waitingConsumers.poll();
+        }
+        wakeStarved(false);
+    }
+
+    private void consumed(int count) {
+        grantedFilled -= count;
+        size -= count;
+        while (!waitingProducers.isEmpty() && tryGrant(waitingProducers.peek(), true)) {
+            waitingProducers.poll();
+        }
+        wakeStarved(true);
+    }
+
+    private void wakeStarved(boolean produce) {
+        if (shards.length == 1 || available(produce) == 0) {
+            return;
+        }
+        boolean[] starved = produce ? starvedProducers : starvedConsumers;
+        for (int i = 0; i < starved.length; i++) {
+            if (starved[i]) {
+                starved[i] = false;
+                shards[i].tell(new Wake(index, produce), getSelf());
+            }
+        }
+    }
+
+    // Free slots for a producer, or filled slots for a consumer, not yet granted
+    private int available(boolean produce) {
+        return produce ? bufferLength - size - grantedFree : size - grantedFilled;
+    }
+
+    private boolean tryGrant(ActorRef requester, boolean produce) {
+        if (produce) {
+            int free = available(true);
+            if (free == 0) {
+                return false;
+            }
+            int count = Math.min(credit, free);
+            grantedFree += count;
+            if (credit == 1) {
+                requester.tell(new ProducerActor.Produce(nextProduce), getSelf());
+            } else {
+                requester.tell(new ProducerActor.ProduceBatch(nextProduce, count), getSelf());
+            }
+            nextProduce = (nextProduce + count) % bufferLength;
+        } else {
+            int filled = available(false);
+            if (filled == 0) {
+                return false;
+            }
+            int count = Math.min(credit, filled);
+            grantedFilled += count;
+            if (credit == 1) {
+                requester.tell(new ConsumerActor.Consume(nextConsume), getSelf());
+            } else {
+                requester.tell(new ConsumerActor.ConsumeBatch(nextConsume, count), getSelf());
+            }
+            nextConsume = (nextConsume + count) % bufferLength;
+        }
+        return true;
+    }
+
+    private ActorRef next() {
+        return shards[(index + 1) % shards.length];
+    }
+}
@@ -0,0 +1,123 @@
+package ProducerConsumer;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+
+class ConsumerActor extends AbstractActor {
+    // Messages
+    public static class Setup {
+        public final ActorRef buffer;
+
+        public Setup(ActorRef buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    public static class Initial {}
+    public static class Consume {
+        public final int bufNum;
+        public Consume(int bufNum) {
+            this.bufNum = bufNum;
+        }
+    }
+    public static class ConsumeBatch {
+        public final int firstBufNum;
+        public final int count;
+        public ConsumeBatch(int firstBufNum, int count) {
+            this.firstBufNum = firstBufNum;
+            this.count = count;
+        }
+    }
+    public static class BeginConsume {
+        static final BeginConsume INSTANCE = new BeginConsume();
+    }
+    public static class GetConsumed {}
+    public static class Consumed {
+        public final long items;
+        // Sum of the values read from the ring; the other transports carry no values
+        public final long checksum;
+        public Consumed(long items, long checksum) {
+            this.items = items;
+            this.checksum = checksum;
+        }
+    }
+
+    private static final int RING_BURST = 4096;
+
+    // State (matches empty Rebeca statevars)
+    private ActorRef buffer;
+    private long consumed;
+    private OffHeapRing ring;
+    private long checksum;
+
+    public static Props props() {
+        return Props.create(ConsumerActor.class);
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Setup.class, this::handleSetup)
+                .match(Initial.class, this::handleInitial)
+                .match(Consume.class, this::handleConsume)
+                .match(ConsumeBatch.class, this::handleConsumeBatch)
+                .match(BeginConsume.class, this::handleBeginConsume)
+                .match(GetConsumed.class, this::handleGetConsumed)
+                .match(BufferManagerActor.UseRing.class, this::handleUseRing)
+                .build();
+    }
+
+    private void handleSetup(Setup setup) {
+        this.buffer = setup.buffer;
+    }
+
+    private void handleInitial(Initial msg) {
+        getSelf().tell(new BeginConsume(), getSelf());
+    }
+
+    private void handleConsume(Consume msg) {
+        consumed++;
+        getSender().tell(new BufferManagerActor.AckConsume(), getSelf());
+        getSelf().tell(new BeginConsume(), getSelf());
+    }
+
+    private void handleConsumeBatch(ConsumeBatch msg) {
+        consumed += msg.count;
+        getSender().tell(new BufferManagerActor.AckConsumeBatch(msg.count), getSelf());
+        getSelf().tell(new BeginConsume(), getSelf());
+    }
+
+    private void handleBeginConsume(BeginConsume msg) {
+        if (ring == null) {
+            buffer.tell(new BufferManagerActor.GiveMeNextConsume(), getSelf());
+            return;
+        }
+        int count = Math.min(ring.readable(), RING_BURST);
+        if (count == 0) {
+            ring.consumerParked.set(true);
+            if (ring.readable() == 0 || !ring.consumerParked.compareAndSet(true, false)) {
+                return;
+            }
+            count = Math.min(ring.readable(), RING_BURST);
+        }
+        for (int i = 0; i < count; i++) {
+            checksum += ring.read(i);
+        }
+        ring.release(count);
+        consumed += count;
+        if (ring.producerParked.get() && ring.producerParked.compareAndSet(true, false)) {
+            buffer.tell(BufferManagerActor.RingNotFull.INSTANCE, getSelf());
+        }
+        getSelf().tell(BeginConsume.INSTANCE, getSelf());
+    }
+
+    private void handleUseRing(BufferManagerActor.UseRing msg) {
+        ring = msg.ring;
+        getSelf().tell(BeginConsume.INSTANCE, getSelf());
+    }
+
+    private void handleGetConsumed(GetConsumed msg) {
+        getSender().tell(new Consumed(consumed, checksum), getSelf());
+    }
+}
@@ -2,9 +2,18 @@ package ProducerConsumer;
 
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
+import akka.pattern.Patterns;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 3) {
+            runSharded(args);
+            return;
+        }
+
         ActorSystem system = ActorSystem.create("ProducerConsumerSystem");
 
         // Create actors
@@ -22,4 +31,68 @@ public class Main {
         producer.tell(new ProducerActor.Initial(), ActorRef.noSender());
         consumer.tell(new ConsumerActor.Initial(), ActorRef.noSender());
     }
+
+    // Usage: Main <producers> <consumers> <shards> [bufferLength] [credit] [seconds]
+    private static void runSharded(String[] args) throws Exception {
+        int producers = Integer.parseInt(args[0]);
+        int consumers = Integer.parseInt(args[1]);
+        int shardCount = Integer.parseInt(args[2]);
+        int bufferLength = args.length > 3 ? Integer.parseInt(args[3]) : 1024;
+        int credit = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+        int seconds = args.length > 5 ? Integer.parseInt(args[5]) : 5;
+
+        ActorSystem system = ActorSystem.create("ProducerConsumerSystem");
+
+        ActorRef[] shards = new ActorRef[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = system.actorOf(BufferShardActor.props(bufferLength, credit), "shard" + i);
+        }
+        for (int i = 0; i < shardCount; i++) {
+            shards[i].tell(new BufferShardActor.Setup(shards, i), ActorRef.noSender());
+        }
+
+        // Producers and consumers are spread round-robin over their home shards
+        ActorRef[] consumerRefs = new ActorRef[consumers];
+        for (int i = 0; i < consumers; i++) {
+            consumerRefs[i] = system.actorOf(ConsumerActor.props(), "consumer" + i);
+            consumerRefs[i].tell(new ConsumerActor.Setup(shards[i % shardCount]), ActorRef.noSender());
+            consumerRefs[i].tell(new ConsumerActor.Initial(), ActorRef.noSender());
+        }
+        for (int i = 0; i < producers; i++) {
+            ActorRef producer = system.actorOf(ProducerActor.props(), "producer" + i);
+            producer.tell(new ProducerActor.Setup(shards[i % shardCount]), ActorRef.noSender());
+            producer.tell(new ProducerActor.Initial(), ActorRef.noSender());
+        }
+
+        Thread.sleep(1000);
+        long[] before = consumed(consumerRefs);
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        long[] after = consumed(consumerRefs);
+        long elapsed = System.nanoTime() - start;
+
+        long total = 0;
+        StringBuilder perConsumer = new StringBuilder();
+        for (int i = 0; i < consumers; i++) {
+            long items = after[i] - before[i];
+            total += items;
+            perConsumer.append(String.format(" consumer%d@shard%d=%,d", i, i % shardCount, items));
+        }
+        System.out.printf("producers=%d consumers=%d shards=%d items/sec=%.0f%n",
+                producers, consumers, shardCount, total * 1e9 / elapsed);
+        System.out.println("items per consumer:" + perConsumer);
+
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    private static long[] consumed(ActorRef[] consumers) throws Exception {
+        long[] items = new long[consumers.length];
+        for (int i = 0; i < consumers.length; i++) {
+            Object reply = Patterns.ask(consumers[i], new ConsumerActor.GetConsumed(), Duration.ofSeconds(10))
+                    .toCompletableFuture().get();
+            items[i] = ((ConsumerActor.Consumed) reply).items;
+        }
+        return items;
+    }
 }
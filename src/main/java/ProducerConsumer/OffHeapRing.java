@@ -0,0 +1,76 @@
+package ProducerConsumer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Single-producer/single-consumer ring of long payloads in a preallocated direct buffer.
+// Each side writes or reads a run of slots and publishes it with one volatile store;
+// a side that finds the ring full/empty raises its parked flag and waits for a wake-up.
+public class OffHeapRing {
+    private final ByteBuffer slots;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private long cachedHead;   // producer's view of head
+    private long cachedTail;   // consumer's view of tail
+
+    public final AtomicBoolean producerParked = new AtomicBoolean();
+    public final AtomicBoolean consumerParked = new AtomicBoolean();
+
+    public OffHeapRing(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+        this.slots = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder());
+        this.mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    // Producer side
+    public int writable() {
+        long t = tail.get();
+        int free = (int) (capacity() - (t - cachedHead));
+        if (free == 0) {
+            cachedHead = head.get();
+            free = (int) (capacity() - (t - cachedHead));
+        }
+        return free;
+    }
+
+    public void write(int offset, long item) {
+        slots.putLong(index(tail.get() + offset), item);
+    }
+
+    public void publish(int count) {
+        tail.set(tail.get() + count);
+    }
+
+    // Consumer side
+    public int readable() {
+        long h = head.get();
+        int filled = (int) (cachedTail - h);
+        if (filled == 0) {
+            cachedTail = tail.get();
+            filled = (int) (cachedTail - h);
+        }
+        return filled;
+    }
+
+    public long read(int offset) {
+        return slots.getLong(index(head.get() + offset));
+    }
+
+    public void release(int count) {
+        head.set(head.get() + count);
+    }
+
+    private int index(long position) {
+        return (int) (position & mask) * Long.BYTES;
+    }
+}
@@ -0,0 +1,106 @@
+package ProducerConsumer;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+
+class ProducerActor extends AbstractActor {
+    // Messages
+    public static class Setup {
+        public final ActorRef buffer;
+
+        public Setup(ActorRef buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    public static class Initial {}
+    public static class Produce {
+        public final int bufNum;
+        public Produce(int bufNum) {
+            this.bufNum = bufNum;
+        }
+    }
+    public static class ProduceBatch {
+        public final int firstBufNum;
+        public final int count;
+        public ProduceBatch(int firstBufNum, int count) {
+            this.firstBufNum = firstBufNum;
+            this.count = count;
+        }
+    }
+    public static class BeginProduce {
+        static final BeginProduce INSTANCE = new BeginProduce();
+    }
+
+    // Items written per turn before yielding the dispatcher thread
+    private static final int RING_BURST = 4096;
+
+    // State (matches empty Rebeca statevars)
+    private ActorRef buffer;
+    private OffHeapRing ring;
+    private long produced;
+
+    public static Props props() {
+        return Props.create(ProducerActor.class);
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Setup.class, this::handleSetup)
+                .match(Initial.class, this::handleInitial)
+                .match(Produce.class, this::handleProduce)
+                .match(ProduceBatch.class, this::handleProduceBatch)
+                .match(BeginProduce.class, this::handleBeginProduce)
+                .match(BufferManagerActor.UseRing.class, this::handleUseRing)
+                .build();
+    }
+
+    private void handleSetup(Setup setup) {
+        this.buffer = setup.buffer;
+    }
+
+    private void handleInitial(Initial msg) {
+        getSelf().tell(new BeginProduce(), getSelf());
+    }
+
+    private void handleProduce(Produce msg) {
+        getSender().tell(new BufferManagerActor.AckProduce(), getSelf());
+        getSelf().tell(new BeginProduce(), getSelf());
+    }
+
+    private void handleProduceBatch(ProduceBatch msg) {
+        getSender().tell(new BufferManagerActor.AckProduceBatch(msg.count), getSelf());
+        getSelf().tell(new BeginProduce(), getSelf());
+    }
+
+    private void handleBeginProduce(BeginProduce msg) {
+        if (ring == null) {
+            buffer.tell(new BufferManagerActor.GiveMeNextProduce(), getSelf());
+            return;
+        }
+        int count = Math.min(ring.writable(), RING_BURST);
+        if (count == 0) {
+            // Park, then look again in case the consumer drained the ring before it could see the flag
+            ring.producerParked.set(true);
+            if (ring.writable() == 0 || !ring.producerParked.compareAndSet(true, false)) {
+                return;
+            }
+            count = Math.min(ring.writable(), RING_BURST);
+        }
+        for (int i = 0; i < count; i++) {
+            ring.write(i, produced++);
+        }
+        ring.publish(count);
+        if (ring.consumerParked.get() && ring.consumerParked.compareAndSet(true, false)) {
+            buffer.tell(BufferManagerActor.RingNotEmpty.INSTANCE, getSelf());
+        }
+        getSelf().tell(BeginProduce.INSTANCE, getSelf());
+    }
+
+    private void handleUseRing(BufferManagerActor.UseRing msg) {
+        ring = msg.ring;
+        getSelf().tell(BeginProduce.INSTANCE, getSelf());
+    }
+}
@@ -0,0 +1,94 @@
+package SenderReceiver;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.pattern.Patterns;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Goodput (unique messages delivered per second) and CPU cost per delivered message.
+// Usage: Benchmark [seconds] [initialTimeoutMs]
+public class Benchmark {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    // Retransmission timers need a finer scheduler tick than the 10ms default
+    static final Config CONFIG = ConfigFactory.parseString("akka.scheduler.tick-duration = 1ms")
+            .withFallback(ConfigFactory.load());
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        Duration initialTimeout = Duration.ofMillis(args.length > 1 ? Long.parseLong(args[1]) : 10);
+
+        // Rebeca's model: the receiver never acks, so the sender never flips its bit and at most
+        // one message is ever delivered. Shown for its CPU cost, not its goodput.
+        report("unpaced", run(SenderActor.props(), MediumActor.props(), ReceiverActor.props(), seconds));
+        report("alternating-bit", run(SenderActor.props(initialTimeout), MediumActor.props(),
+                ReceiverActor.props(SenderActor.Mode.ALTERNATING_BIT, 1), seconds));
+    }
+
+    static Result run(Props senderProps, Props mediumProps, Props receiverProps, int seconds) throws Exception {
+        ActorSystem system = ActorSystem.create("ProtocolBenchmark", CONFIG);
+        try {
+            ActorRef sender = system.actorOf(senderProps, "sender");
+            ActorRef medium = system.actorOf(mediumProps, "medium");
+            ActorRef receiver = system.actorOf(receiverProps, "receiver");
+
+            sender.tell(new SenderActor.Setup(medium, receiver), ActorRef.noSender());
+            medium.tell(new MediumActor.Setup(receiver, sender), ActorRef.noSender());
+            receiver.tell(new ReceiverActor.Setup(medium, sender), ActorRef.noSender());
+
+            receiver.tell(new ReceiverActor.Initial(), ActorRef.noSender());
+            medium.tell(new MediumActor.Initial(), ActorRef.noSender());
+            sender.tell(new SenderActor.Initial(), ActorRef.noSender());
+
+            // Let early JIT-inflated RTT samples age out of the smoothed RTO first
+            Thread.sleep(2000);
+            long before = delivered(receiver);
+            long cpuBefore = processCpuNanos();
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            long after = delivered(receiver);
+            long cpu = processCpuNanos() - cpuBefore;
+            long elapsed = System.nanoTime() - start;
+            return new Result(after - before, elapsed, cpu);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    static void report(String label, Result result) {
+        System.out.printf("%-16s goodput=%,.0f msg/s  cpu=%.0f%% of a core  cpu/msg=%s%n",
+                label,
+                result.delivered * 1e9 / result.elapsedNanos,
+                100.0 * result.cpuNanos / result.elapsedNanos,
+                result.delivered == 0 ? "n/a" : String.format("%,.1f us", result.cpuNanos / 1e3 / result.delivered));
+    }
+
+    private static long delivered(ActorRef receiver) throws Exception {
+        Object reply = Patterns.ask(receiver, new ReceiverActor.GetDelivered(), TIMEOUT).toCompletableFuture().get();
+        return ((ReceiverActor.Delivered) reply).messages;
+    }
+
+    static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    static class Result {
+        final long delivered;
+        final long elapsedNanos;
+        final long cpuNanos;
+
+        Result(long delivered, long elapsedNanos, long cpuNanos) {
+            this.delivered = delivered;
+            this.elapsedNanos = elapsedNanos;
+            this.cpuNanos = cpuNanos;
+        }
+    }
+}
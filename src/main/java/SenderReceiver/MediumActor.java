@@ -0,0 +1,133 @@
+package SenderReceiver;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import Common.ChannelModel;
+
+import java.util.Random;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+class MediumActor extends AbstractActor {
+    // Messages
+    public static class Setup {
+        public final ActorRef receiver;
+        public final ActorRef sender;
+
+        public Setup(ActorRef receiver, ActorRef sender) {
+            this.receiver = receiver;
+            this.sender = sender;
+        }
+    }
+
+    public static class Pass {
+        public final boolean msgBit;
+
+        public Pass(boolean msgBit) {
+            this.msgBit = msgBit;
+        }
+    }
+
+    public static class PassSeq {
+        public final int seq;
+        public final long sentAt;
+
+        public PassSeq(int seq, long sentAt) {
+            this.seq = seq;
+            this.sentAt = sentAt;
+        }
+    }
+
+    // Acks on their way back from the receiver cross a lossy channel of their own
+    public static class PassAck {
+        public final boolean msgBit;
+
+        public PassAck(boolean msgBit) {
+            this.msgBit = msgBit;
+        }
+    }
+
+    public static class PassAckSeq {
+        public final int seq;
+        public final long sentAt;
+
+        public PassAckSeq(int seq, long sentAt) {
+            this.seq = seq;
+            this.sentAt = sentAt;
+        }
+    }
+
+    public static class Initial {}
+
+    // State (1:1 with Rebeca)
+    private ActorRef receiver;
+    private ActorRef sender;
+    private boolean passMessage;
+    // One model per direction: with a shared one, which draw a frame got would depend on how
+    // data and acks happened to interleave, and a seed would not repeat its loss pattern
+    private final ChannelModel channel;
+    private final ChannelModel ackChannel;
+
+    static final long DEFAULT_SEED = 42;
+
+    public MediumActor(ChannelModel channel, ChannelModel ackChannel) {
+        this.channel = channel;
+        this.ackChannel = ackChannel;
+    }
+
+    // Rebeca's unseeded fair coin
+    public static Props props() {
+        return props(() -> ChannelModel.bernoulli(0.5, new Random().nextLong()),
+                () -> ChannelModel.bernoulli(0.5, new Random().nextLong()));
+    }
+
+    public static Props props(double lossRate) {
+        return props(seed -> ChannelModel.bernoulli(lossRate, seed), DEFAULT_SEED);
+    }
+
+    // The same channel both ways, the ack direction seeded apart from the data direction
+    public static Props props(LongFunction<ChannelModel> channel, long seed) {
+        return props(() -> channel.apply(seed), () -> channel.apply(seed * 0x9E3779B97F4A7C15L + 1));
+    }
+
+    // A ChannelModel and its loss model carry state, so every actor instance, restarts included,
+    // gets fresh ones from the factories
+    public static Props props(Supplier<ChannelModel> channel, Supplier<ChannelModel> ackChannel) {
+        return Props.create(MediumActor.class, () -> new MediumActor(channel.get(), ackChannel.get()));
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Setup.class, this::handleSetup)
+                .match(Pass.class, this::handlePass)
+                .match(PassSeq.class, this::handlePassSeq)
+                .match(PassAck.class, msg ->
+                        ackChannel.transmit(getContext(), sender, new SenderActor.Ack(msg.msgBit), getSelf()))
+                .match(PassAckSeq.class, msg ->
+                        ackChannel.transmit(getContext(), sender, new SenderActor.AckSeq(msg.seq, msg.sentAt),
+                                getSelf()))
+                .match(Initial.class, this::handleInitial)
+                .build();
+    }
+
+    private void handleSetup(Setup setup) {
+        this.receiver = setup.receiver;
+        this.sender = setup.sender;
+    }
+
+    private void handleInitial(Initial msg) {
+        passMessage = true; // Exact initial state
+    }
+
+    private void handlePass(Pass msg) {
+        // Probabilistic choice (?(true,false)) is now the channel model's loss decision
+        passMessage = channel.transmit(getContext(), receiver, new ReceiverActor.ReceiveMsg(msg.msgBit), getSelf()) > 0;
+        // Else clause exactly matches Rebeca code's empty else
+    }
+
+    private void handlePassSeq(PassSeq msg) {
+        channel.transmit(getContext(), receiver, new ReceiverActor.ReceiveSeq(msg.seq, msg.sentAt), getSelf());
+    }
+}
@@ -0,0 +1,140 @@
+package SenderReceiver;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+
+class ReceiverActor extends AbstractActor {
+    // Messages
+    public static class Setup {
+        public final ActorRef medium;
+        public final ActorRef sender;
+
+        public Setup(ActorRef medium, ActorRef sender) {
+            this.medium = medium;
+            this.sender = sender;
+        }
+    }
+
+    public static class ReceiveMsg {
+        public final boolean msgBit;
+
+        public ReceiveMsg(boolean msgBit) {
+            this.msgBit = msgBit;
+        }
+    }
+
+    public static class ReceiveSeq {
+        public final int seq;
+        public final long sentAt;
+
+        public ReceiveSeq(int seq, long sentAt) {
+            this.seq = seq;
+            this.sentAt = sentAt;
+        }
+    }
+
+    public static class Initial {}
+    public static class GetDelivered {}
+    public static class Delivered {
+        public final long messages;
+
+        public Delivered(long messages) {
+            this.messages = messages;
+        }
+    }
+
+    // State (1:1 with Rebeca)
+    boolean messageBit;
+    private ActorRef medium;
+    private ActorRef sender;
+    private boolean expectedBit;
+    private long delivered;
+
+    // Sliding-window modes: next in-order sequence number and, for Selective Repeat, the buffered ones
+    private final SenderActor.Mode mode;
+    private final int window;
+    private int expectedSeq;
+    private final boolean[] buffered;
+
+    // Rebeca's receiver never acks; the timer-paced and window modes ack back through the medium
+    private final boolean acks;
+
+    public ReceiverActor(SenderActor.Mode mode, int window, boolean acks) {
+        this.mode = mode;
+        this.window = window;
+        this.buffered = new boolean[window];
+        this.acks = acks;
+    }
+
+    public static Props props() {
+        return Props.create(ReceiverActor.class, () -> new ReceiverActor(SenderActor.Mode.ALTERNATING_BIT, 1, false));
+    }
+
+    public static Props props(SenderActor.Mode mode, int window) {
+        return Props.create(ReceiverActor.class, () -> new ReceiverActor(mode, window, true));
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Setup.class, this::handleSetup)
+                .match(ReceiveMsg.class, this::handleReceiveMsg)
+                .match(ReceiveSeq.class, this::handleReceiveSeq)
+                .match(Initial.class, this::handleInitial)
+                .match(GetDelivered.class, this::handleGetDelivered)
+                .build();
+    }
+
+    private void handleSetup(Setup setup) {
+        this.medium = setup.medium;
+        this.sender = setup.sender;
+    }
+
+    private void handleInitial(Initial msg) {
+        expectedBit = false;
+        expectedSeq = 0;
+    }
+
+    private void handleReceiveMsg(ReceiveMsg msg) {
+        messageBit = msg.msgBit;
+        if (messageBit == expectedBit) {
+            delivered++;
+            expectedBit = !expectedBit;
+        }
+        // Rebeca's commented-out sender.receive(true), acking the bit actually received
+        if (acks) {
+            medium.tell(new MediumActor.PassAck(messageBit), getSelf());
+        }
+    }
+
+    private void handleReceiveSeq(ReceiveSeq msg) {
+        if (mode == SenderActor.Mode.GO_BACK_N) {
+            if (msg.seq == expectedSeq) {
+                delivered++;
+                expectedSeq++;
+            }
+            if (expectedSeq > 0) {
+                medium.tell(new MediumActor.PassAckSeq(expectedSeq - 1, msg.sentAt), getSelf());
+            }
+            return;
+        }
+        if (msg.seq >= expectedSeq + window) {
+            return;
+        }
+        if (msg.seq >= expectedSeq) {
+            buffered[msg.seq % window] = true;
+            while (buffered[expectedSeq % window]) {
+                buffered[expectedSeq % window] = false;
+                delivered++;
+                expectedSeq++;
+            }
+        }
+        // Duplicates are acked again: the sender may have timed out before the first ack arrived
+        medium.tell(new MediumActor.PassAckSeq(msg.seq, msg.sentAt), getSelf());
+    }
+
+    private void handleGetDelivered(GetDelivered msg) {
+        getSender().tell(new Delivered(delivered), getSelf());
+    }
+}
@@ -1,13 +1,14 @@
 package SenderReceiver;
 
-
-import akka.actor.AbstractActor;
+import akka.actor.AbstractActorWithTimers;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
-import java.util.Random;
+import java.time.Duration;
+
+public class SenderActor extends AbstractActorWithTimers {
+    public enum Mode { ALTERNATING_BIT, GO_BACK_N, SELECTIVE_REPEAT }
 
-public class SenderActor extends AbstractActor {
     // Messages
     public static class Setup {
         public final ActorRef medium;
@@ -22,6 +23,52 @@ public class SenderActor extends AbstractActor {
     public static class Initial {}
     public static class SendMsg {}
 
+    public static class Ack {
+        public final boolean msgBit;
+
+        public Ack(boolean msgBit) {
+            this.msgBit = msgBit;
+        }
+    }
+
+    // Go-Back-N: highest in-order sequence number received; Selective Repeat: the one received.
+    // sentAt echoes the transmission that triggered the ack, so every ack is an unambiguous RTT sample.
+    public static class AckSeq {
+        public final int seq;
+        public final long sentAt;
+
+        public AckSeq(int seq, long sentAt) {
+            this.seq = seq;
+            this.sentAt = sentAt;
+        }
+    }
+
+    public static class Timeout {
+        public final int seq;
+
+        public Timeout(int seq) {
+            this.seq = seq;
+        }
+    }
+
+    public static class GetStats {}
+    public static class Stats {
+        public final long transmissions;
+        public final long retransmissions;
+        public final Duration rto;
+
+        public Stats(long transmissions, long retransmissions, Duration rto) {
+            this.transmissions = transmissions;
+            this.retransmissions = retransmissions;
+            this.rto = rto;
+        }
+    }
+
+    private static final Object RETRANSMIT = "retransmit";
+    private static final long MIN_RTO_NANOS = Duration.ofMillis(1).toNanos();
+    private static final long MAX_RTO_NANOS = Duration.ofSeconds(1).toNanos();
+    private static final int MAX_BACKOFF_SHIFT = 3;
+
     // State (1:1 with Rebeca)
     private ActorRef medium;
     private ActorRef receiver;
@@ -29,8 +76,44 @@ public class SenderActor extends AbstractActor {
     private boolean sendBit;
     private boolean hasSucceeded;
 
+    // Timer-paced mode (null initialTimeout = Rebeca's unpaced resend loop)
+    private final Duration initialTimeout;
+    private long rtoNanos;
+    private long srttNanos;
+    private long rttvarNanos;
+    private long firstSentAt;
+    private boolean retransmitted;
+    private long transmissions;
+    private long retransmissions;
+
+    // Sliding-window modes: sequence numbers in [base, nextSeq) are in flight, indexed by seq % window
+    private final Mode mode;
+    private final int window;
+    private int base;
+    private int nextSeq;
+    private final boolean[] acked;
+
+    public SenderActor(Mode mode, int window, Duration initialTimeout) {
+        if (window < 1 || (mode == Mode.ALTERNATING_BIT && window != 1)) {
+            throw new IllegalArgumentException("alternating bit needs window 1, the other modes at least 1");
+        }
+        this.mode = mode;
+        this.window = window;
+        this.initialTimeout = initialTimeout;
+        this.acked = new boolean[window];
+    }
+
     public static Props props() {
-        return Props.create(SenderActor.class);
+        return Props.create(SenderActor.class, () -> new SenderActor(Mode.ALTERNATING_BIT, 1, null));
+    }
+
+    // Alternating-bit mode: resend only when the retransmission timer fires, adapting it to measured RTT
+    public static Props props(Duration initialTimeout) {
+        return props(Mode.ALTERNATING_BIT, 1, initialTimeout);
+    }
+
+    public static Props props(Mode mode, int window, Duration initialTimeout) {
+        return Props.create(SenderActor.class, () -> new SenderActor(mode, window, initialTimeout));
     }
 
     @Override
@@ -39,6 +122,10 @@ public class SenderActor extends AbstractActor {
                 .match(Setup.class, this::handleSetup)
                 .match(Initial.class, this::handleInitial)
                 .match(SendMsg.class, this::handleSendMsg)
+                .match(Ack.class, this::handleAck)
+                .match(AckSeq.class, this::handleAckSeq)
+                .match(Timeout.class, this::handleTimeout)
+                .match(GetStats.class, this::handleGetStats)
                 .build();
     }
 
@@ -49,131 +136,148 @@ public class SenderActor extends AbstractActor {
 
     private void handleInitial(Initial msg) {
         sendBit = false;
+        if (initialTimeout != null) {
+            rtoNanos = initialTimeout.toNanos();
+            srttNanos = 0;
+            if (mode == Mode.ALTERNATING_BIT) {
+                transmit(false);
+            } else {
+                base = 0;
+                nextSeq = 0;
+                fillWindow();
+            }
+            return;
+        }
         medium.tell(new MediumActor.Pass(sendBit), getSelf());
         getSelf().tell(new SendMsg(), getSelf());
     }
 
     private void handleSendMsg(SendMsg msg) {
+        if (initialTimeout != null) {
+            // Timer fired before the ack: resend the same bit and back off
+            backOff();
+            transmit(true);
+            return;
+        }
         if (hasSucceeded) {
             sendBit = !sendBit;
         }
         medium.tell(new MediumActor.Pass(sendBit), getSelf());
         getSelf().tell(new SendMsg(), getSelf());
     }
-}
-
-class MediumActor extends AbstractActor {
-    // Messages
-    public static class Setup {
-        public final ActorRef receiver;
-        public final ActorRef sender;
 
-        public Setup(ActorRef receiver, ActorRef sender) {
-            this.receiver = receiver;
-            this.sender = sender;
+    private void handleAck(Ack msg) {
+        if (initialTimeout == null || msg.msgBit != sendBit) {
+            return;
         }
+        progress(firstSentAt, retransmitted);
+        sendBit = !sendBit;
+        transmit(false);
     }
 
-    public static class Pass {
-        public final boolean msgBit;
-
-        public Pass(boolean msgBit) {
-            this.msgBit = msgBit;
+    private void handleAckSeq(AckSeq msg) {
+        if (msg.seq < base || msg.seq >= nextSeq) {
+            return;
         }
+        int slot = msg.seq % window;
+        updateRto(System.nanoTime() - msg.sentAt);
+        if (mode == Mode.GO_BACK_N) {
+            base = msg.seq + 1;
+            getTimers().cancel(RETRANSMIT);
+            if (base < nextSeq) {
+                getTimers().startSingleTimer(RETRANSMIT, new Timeout(base), Duration.ofNanos(rtoNanos));
+            }
+        } else {
+            if (acked[slot]) {
+                return;
+            }
+            acked[slot] = true;
+            getTimers().cancel(msg.seq);
+            while (base < nextSeq && acked[base % window]) {
+                base++;
+            }
+        }
+        fillWindow();
     }
 
-    public static class Initial {}
-
-    // State (1:1 with Rebeca)
-    private ActorRef receiver;
-    private ActorRef sender;
-    private boolean passMessage;
-    private final Random random = new Random();
-
-    public static Props props() {
-        return Props.create(MediumActor.class);
-    }
-
-    @Override
-    public Receive createReceive() {
-        return receiveBuilder()
-                .match(Setup.class, this::handleSetup)
-                .match(Pass.class, this::handlePass)
-                .match(Initial.class, this::handleInitial)
-                .build();
-    }
-
-    private void handleSetup(Setup setup) {
-        this.receiver = setup.receiver;
-        this.sender = setup.sender;
-    }
-
-    private void handleInitial(Initial msg) {
-        passMessage = true; // Exact initial state
+    private void handleTimeout(Timeout msg) {
+        backOff();
+        if (mode == Mode.GO_BACK_N) {
+            for (int seq = base; seq < nextSeq; seq++) {
+                send(seq, true);
+            }
+        } else if (msg.seq >= base && !acked[msg.seq % window]) {
+            send(msg.seq, true);
+        }
     }
 
-    private void handlePass(Pass msg) {
-        // Implement probabilistic choice (?(true,false))
-        passMessage = random.nextBoolean();
-
-        if(passMessage) {
-            receiver.tell(new ReceiverActor.ReceiveMsg(msg.msgBit), getSelf());
+    private void fillWindow() {
+        while (nextSeq < base + window) {
+            send(nextSeq++, false);
         }
-        // Else clause exactly matches Rebeca code's empty else
     }
-}
 
-class ReceiverActor extends AbstractActor {
-    // Messages
-    public static class Setup {
-        public final ActorRef medium;
-        public final ActorRef sender;
-
-        public Setup(ActorRef medium, ActorRef sender) {
-            this.medium = medium;
-            this.sender = sender;
+    private void send(int seq, boolean retransmission) {
+        if (retransmission) {
+            retransmissions++;
+        } else {
+            acked[seq % window] = false;
+        }
+        transmissions++;
+        medium.tell(new MediumActor.PassSeq(seq, System.nanoTime()), getSelf());
+        if (mode == Mode.SELECTIVE_REPEAT) {
+            getTimers().startSingleTimer(seq, new Timeout(seq), Duration.ofNanos(rtoNanos));
+        } else if (!getTimers().isTimerActive(RETRANSMIT) || retransmission && seq == base) {
+            getTimers().startSingleTimer(RETRANSMIT, new Timeout(base), Duration.ofNanos(rtoNanos));
         }
     }
 
-    public static class ReceiveMsg {
-        public final boolean msgBit;
-
-        public ReceiveMsg(boolean msgBit) {
-            this.msgBit = msgBit;
+    // Karn's rule: only sample RTT from messages that were never retransmitted,
+    // but any ack that makes progress drops the backoff
+    private void progress(long firstSent, boolean wasResent) {
+        if (!wasResent) {
+            updateRto(System.nanoTime() - firstSent);
+        } else {
+            rtoNanos = srttNanos != 0 ? computeRto() : initialTimeout.toNanos();
         }
     }
 
-    public static class Initial {}
-
-    // State (1:1 with Rebeca)
-    boolean messageBit;
-    private ActorRef medium;
-    private ActorRef sender;
-
-    public static Props props() {
-        return Props.create(ReceiverActor.class);
+    // Double the timeout, but never past 8x the smoothed RTO
+    private void backOff() {
+        long ceiling = srttNanos == 0 ? MAX_RTO_NANOS : Math.min(MAX_RTO_NANOS, computeRto() << MAX_BACKOFF_SHIFT);
+        rtoNanos = Math.min(rtoNanos * 2, ceiling);
     }
 
-    @Override
-    public Receive createReceive() {
-        return receiveBuilder()
-                .match(Setup.class, this::handleSetup)
-                .match(ReceiveMsg.class, this::handleReceiveMsg)
-                .match(Initial.class, this::handleInitial)
-                .build();
+    private void transmit(boolean retransmission) {
+        if (retransmission) {
+            retransmitted = true;
+            retransmissions++;
+        } else {
+            retransmitted = false;
+            firstSentAt = System.nanoTime();
+        }
+        transmissions++;
+        medium.tell(new MediumActor.Pass(sendBit), getSelf());
+        getTimers().startSingleTimer(RETRANSMIT, new SendMsg(), Duration.ofNanos(rtoNanos));
     }
 
-    private void handleSetup(Setup setup) {
-        this.medium = setup.medium;
-        this.sender = setup.sender;
+    // RFC 6298 smoothing
+    private void updateRto(long sample) {
+        if (srttNanos == 0) {
+            srttNanos = sample;
+            rttvarNanos = sample / 2;
+        } else {
+            rttvarNanos = (3 * rttvarNanos + Math.abs(srttNanos - sample)) / 4;
+            srttNanos = (7 * srttNanos + sample) / 8;
+        }
+        rtoNanos = computeRto();
     }
 
-    private void handleInitial(Initial msg) {
+    private long computeRto() {
+        return Math.max(MIN_RTO_NANOS, Math.min(MAX_RTO_NANOS, srttNanos + 4 * rttvarNanos));
     }
 
-    private void handleReceiveMsg(ReceiveMsg msg) {
-        messageBit = msg.msgBit;
-        // Matches commented out sender.receive(true) in Rebeca
+    private void handleGetStats(GetStats msg) {
+        getSender().tell(new Stats(transmissions, retransmissions, Duration.ofNanos(rtoNanos)), getSelf());
     }
 }
-
@@ -0,0 +1,44 @@
+package SenderReceiver;
+
+import Common.ChannelModel;
+
+import java.time.Duration;
+import java.util.function.LongFunction;
+
+// Goodput of Go-Back-N and Selective Repeat against window size and loss rate.
+// Usage: WindowBenchmark [seconds] [windows, e.g. 1,4,16,64] [loss rates, e.g. 0.1,0.3,0.5]
+//                        [bernoulli|burst] [mean latency ms] [seed]
+// "burst" is a Gilbert-Elliott channel with the same average loss, lost in bursts of two on average.
+public class WindowBenchmark {
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        String[] windows = (args.length > 1 ? args[1] : "1,4,16,64").split(",");
+        String[] lossRates = (args.length > 2 ? args[2] : "0.1,0.3,0.5").split(",");
+        boolean burst = args.length > 3 && args[3].equals("burst");
+        Duration latency = Duration.ofMillis(args.length > 4 ? Long.parseLong(args[4]) : 0);
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : MediumActor.DEFAULT_SEED;
+        Duration initialTimeout = Duration.ofMillis(10).plus(latency.multipliedBy(2));
+
+        System.out.printf("%-17s %6s %5s %14s %12s%n", "mode", "window", "loss", "goodput msg/s", "cpu/msg us");
+        for (String lossText : lossRates) {
+            double loss = Double.parseDouble(lossText);
+            for (String windowText : windows) {
+                int window = Integer.parseInt(windowText);
+                for (SenderActor.Mode mode : new SenderActor.Mode[]{SenderActor.Mode.GO_BACK_N, SenderActor.Mode.SELECTIVE_REPEAT}) {
+                    LongFunction<ChannelModel> channel = s -> new ChannelModel(s)
+                            .withLoss(burst ? ChannelModel.gilbertElliott(loss * 0.5 / (1 - loss), 0.5, 0, 1)
+                                            : ChannelModel.bernoulli(loss))
+                            .withLatency(ChannelModel.exponential(latency));
+                    Benchmark.Result result = Benchmark.run(
+                            SenderActor.props(mode, window, initialTimeout),
+                            MediumActor.props(channel, seed),
+                            ReceiverActor.props(mode, window),
+                            seconds);
+                    System.out.printf("%-17s %6d %5.2f %,14.0f %,12.1f%n", mode, window, loss,
+                            result.delivered * 1e9 / result.elapsedNanos,
+                            result.delivered == 0 ? Double.NaN : result.cpuNanos / 1e3 / result.delivered);
+                }
+            }
+        }
+    }
+}
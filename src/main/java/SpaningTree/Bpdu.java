@@ -0,0 +1,16 @@
+package SpaningTree;
+
+// Configuration message. Immutable, so a bridge allocates one per broadcast and the same instance
+// travels to its ports, across each LAN and into every bridge that hears it. Which way it is
+// going is told by who sent it.
+final class Bpdu {
+    public final int senderID;
+    public final int distance;
+    public final int believedRootID;
+
+    public Bpdu(int senderID, int distance, int believedRootID) {
+        this.senderID = senderID;
+        this.distance = distance;
+        this.believedRootID = believedRootID;
+    }
+}
@@ -0,0 +1,70 @@
+package SpaningTree;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+
+import java.util.Arrays;
+
+// Lan Actor. A shared segment: a Bpdu from one attached port reaches every other attached port
+// as the same instance. Counts its own broadcasts and deliveries.
+class Lan extends AbstractActor {
+    private final NetworkStats stats;
+    private ActorRef[] ports = new ActorRef[2];
+    private int attached;
+    private long broadcasts;
+    private long deliveries;
+
+    public Lan(NetworkStats stats) {
+        this.stats = stats;
+    }
+
+    static Props props(NetworkStats stats) {
+        return Props.create(Lan.class, () -> new Lan(stats));
+    }
+
+    static class Attach {
+        public final ActorRef port;
+
+        public Attach(ActorRef port) {
+            this.port = port;
+        }
+    }
+    static class GetLanStats {}
+    static class LanStats {
+        public final int attached;
+        public final long broadcasts;
+        public final long deliveries;
+
+        public LanStats(int attached, long broadcasts, long deliveries) {
+            this.attached = attached;
+            this.broadcasts = broadcasts;
+            this.deliveries = deliveries;
+        }
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Attach.class, msg -> {
+                    if (attached == ports.length) {
+                        ports = Arrays.copyOf(ports, attached * 2);
+                    }
+                    ports[attached++] = msg.port;
+                })
+                .match(Bpdu.class, msg -> {
+                    ActorRef from = getSender();
+                    for (int i = 0; i < attached; i++) {
+                        if (!ports[i].equals(from)) {
+                            ports[i].tell(msg, self());
+                            deliveries++;
+                        }
+                    }
+                    broadcasts++;
+                    stats.bpdus.increment();
+                })
+                .match(GetLanStats.class, msg ->
+                        getSender().tell(new LanStats(attached, broadcasts, deliveries), self()))
+                .build();
+    }
+}
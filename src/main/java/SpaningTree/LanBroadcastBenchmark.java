@@ -0,0 +1,138 @@
+package SpaningTree;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.pattern.Patterns;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Broadcast and delivery rates of one Lan segment as its fan-out grows, with bytes allocated per
+// delivery. A sender keeps `window` BPDUs in flight; the last attached port acknowledges each one.
+// Usage: LanBroadcastBenchmark [fanouts, e.g. 2,8,32,128,512] [deliveries per run] [window]
+public class LanBroadcastBenchmark {
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    public static void main(String[] args) throws Exception {
+        String[] fanouts = (args.length > 0 ? args[0] : "2,8,32,128,512").split(",");
+        long deliveries = args.length > 1 ? Long.parseLong(args[1]) : 5_000_000;
+        int window = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        System.out.printf("%8s %12s %14s %14s %12s%n", "fan-out", "broadcasts", "broadcasts/s", "deliveries/s",
+                "B/delivery");
+        for (String fanout : fanouts) {
+            int ports = Integer.parseInt(fanout);
+            run(ports, Math.max(1, deliveries / ports), window);
+        }
+    }
+
+    private static void run(int ports, long broadcasts, int window) throws Exception {
+        System.gc();
+        ActorSystem system = ActorSystem.create("LanBroadcast");
+        try {
+            ActorRef lan = system.actorOf(Lan.props(new NetworkStats()), "lan");
+            CompletableFuture<Long> done = new CompletableFuture<>();
+            ActorRef sender = system.actorOf(Sender.props(lan, broadcasts, window, done), "sender");
+            for (int i = 0; i < ports - 1; i++) {
+                lan.tell(new Lan.Attach(system.actorOf(Props.create(Port.class, () -> new Port(null)), "port" + i)),
+                        ActorRef.noSender());
+            }
+            lan.tell(new Lan.Attach(system.actorOf(Props.create(Port.class, () -> new Port(sender)), "acking")),
+                    ActorRef.noSender());
+
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            sender.tell(new Sender.Start(), ActorRef.noSender());
+            done.get(TIMEOUT.getSeconds(), TimeUnit.SECONDS);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            long allocated = allocatedBytes() - allocatedBefore;
+            Lan.LanStats stats = (Lan.LanStats) Patterns.ask(lan, new Lan.GetLanStats(), TIMEOUT)
+                    .toCompletableFuture().get();
+            System.out.printf("%8d %,12d %,14.0f %,14.0f %12.1f%n", ports, stats.broadcasts,
+                    stats.broadcasts / elapsed, stats.deliveries / elapsed,
+                    (double) allocated / Math.max(1, stats.deliveries));
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    // Not attached to the LAN, so every port receives each broadcast
+    static class Sender extends AbstractActor {
+        private final ActorRef lan;
+        private final long broadcasts;
+        private final int window;
+        private final CompletableFuture<Long> done;
+        private long sent;
+        private long acked;
+
+        Sender(ActorRef lan, long broadcasts, int window, CompletableFuture<Long> done) {
+            this.lan = lan;
+            this.broadcasts = broadcasts;
+            this.window = window;
+            this.done = done;
+        }
+
+        static Props props(ActorRef lan, long broadcasts, int window, CompletableFuture<Long> done) {
+            return Props.create(Sender.class, () -> new Sender(lan, broadcasts, window, done));
+        }
+
+        static class Start {}
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(Start.class, msg -> {
+                        while (sent < broadcasts && sent < window) {
+                            send();
+                        }
+                    })
+                    .match(Bpdu.class, msg -> {
+                        if (++acked == broadcasts) {
+                            done.complete(acked);
+                        } else if (sent < broadcasts) {
+                            send();
+                        }
+                    })
+                    .build();
+        }
+
+        private void send() {
+            lan.tell(new Bpdu(1, (int) (sent++ & 0xFFFF), 1), self());
+        }
+    }
+
+    // A bridge port that takes the BPDU and, if it is the acking one, returns the same instance
+    static class Port extends AbstractActor {
+        private final ActorRef ackTo;
+
+        Port(ActorRef ackTo) {
+            this.ackTo = ackTo;
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                    .match(Bpdu.class, msg -> {
+                        if (ackTo != null) {
+                            ackTo.tell(msg, self());
+                        }
+                    })
+                    .build();
+        }
+    }
+}
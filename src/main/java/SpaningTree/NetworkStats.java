@@ -0,0 +1,11 @@
+package SpaningTree;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters shared by every actor of one network
+class NetworkStats {
+    final LongAdder bpdus = new LongAdder();          // frames put on a LAN
+    final LongAdder rootChanges = new LongAdder();
+    final AtomicLong lastChangeNanos = new AtomicLong();
+}
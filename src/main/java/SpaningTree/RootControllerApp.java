@@ -1,114 +1,159 @@
 package SpaningTree;
 
+import Common.EventLog;
 import akka.actor.AbstractActor;
+import akka.actor.AbstractActorWithTimers;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
-import akka.event.Logging;
-import akka.event.LoggingAdapter;
-
-// RootController Actor
-class RootController extends AbstractActor {
-    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
-
-    private ActorRef pController1;
-    private ActorRef pController2;
-    private ActorRef pController3;
-
-    private byte rootID;
-    private byte rootDistance;
-    private byte myID;
-    private boolean IamRoot;
+import akka.pattern.Patterns;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.Logger;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// RootController Actor. A bridge with any number of ports; its id is also its priority.
+class RootController extends AbstractActorWithTimers {
+    private static final Logger log = EventLog.logger(RootController.class);
+    private static final Object HELLO = "hello";
+    private final String name = getSelf().path().name();
+
+    private final NetworkStats stats;
+    private final Duration helloDelay;
+    private ActorRef[] ports = new ActorRef[0];
+
+    private final int myID;
+    private int rootID;
+    private int rootDistance;
+    private int bestPort = -1;
+    private boolean IamRoot = true;
+
+    // Every bridge starts out as its own root, so information arriving before Initial is kept
+    public RootController(int myID, Duration helloDelay, NetworkStats stats) {
+        this.myID = myID;
+        this.rootID = myID;
+        this.helloDelay = helloDelay;
+        this.stats = stats;
+    }
 
-    public RootController(ActorRef pController1, ActorRef pController2, ActorRef pController3) {
-        this.pController1 = pController1;
-        this.pController2 = pController2;
-        this.pController3 = pController3;
+    static Props props(int myID, Duration helloDelay, NetworkStats stats) {
+        return Props.create(RootController.class, () -> new RootController(myID, helloDelay, stats));
     }
 
-    static class Initial {
-        public final byte id;
+    static class Ports {
+        public final ActorRef[] ports;
 
-        public Initial(byte id) {
-            this.id = id;
+        public Ports(ActorRef[] ports) {
+            this.ports = ports;
         }
     }
 
-    static class RecvInf {
-        public final byte senderID;
-        public final byte distance;
-        public final byte believedRootID;
+    static class Initial {}
+
+    static class Config {}
+
+    static class GetState {}
+
+    static class State {
+        public final int id;
+        public final int rootID;
+        public final int rootDistance;
+        public final int bestPort;
 
-        public RecvInf(byte senderID, byte distance, byte believedRootID) {
-            this.senderID = senderID;
-            this.distance = distance;
-            this.believedRootID = believedRootID;
+        public State(int id, int rootID, int rootDistance, int bestPort) {
+            this.id = id;
+            this.rootID = rootID;
+            this.rootDistance = rootDistance;
+            this.bestPort = bestPort;
         }
     }
 
-    static class Config {}
-
     @Override
     public Receive createReceive() {
         return receiveBuilder()
-                .match(Initial.class, msg -> {
-                    myID = msg.id;
-                    rootID = myID;
-                    rootDistance = 0;
-                    IamRoot = true;
-                    self().tell(new Config(), self());
-                })
-                .match(RecvInf.class, msg -> {
+                .match(Ports.class, msg -> ports = msg.ports)
+                .match(Initial.class, msg -> self().tell(new Config(), self()))
+                // Heard on one of our ports, which forwarded it
+                .match(Bpdu.class, msg -> {
                     if (msg.believedRootID < rootID) {
-                        updateRootState(msg.believedRootID, (byte) (msg.distance + 1));
+                        updateRootState(msg.believedRootID, msg.distance + 1, portOf(getSender()));
                         propagateInformation();
                     } else if (msg.believedRootID == rootID && msg.distance + 1 < rootDistance) {
-                        updateRootState(msg.believedRootID, (byte) (msg.distance + 1));
+                        updateRootState(msg.believedRootID, msg.distance + 1, portOf(getSender()));
                         propagateInformation();
                     } else if (!(msg.believedRootID == rootID && msg.distance + 1 == rootDistance)) {
-                        self().tell(new Config(), self());
+                        // A neighbour has yet to hear from us. The root answers with one hello per
+                        // helloDelay however many stale frames arrive meanwhile
+                        if (IamRoot && !getTimers().isTimerActive(HELLO)) {
+                            getTimers().startSingleTimer(HELLO, new Config(), helloDelay);
+                        }
                     }
                 })
                 .match(Config.class, msg -> {
                     if (IamRoot) {
-                        log.info("I am the root. Sending LAN messages.");
-                        sendLanMessages((byte) 0, myID);
+                        if (log.isInfoEnabled()) {
+                            log.info("{}: I am the root. Sending LAN messages.", name);
+                        }
+                        sendLanMessages(0, myID);
                     }
                 })
+                .match(GetState.class, msg ->
+                        getSender().tell(new State(myID, rootID, rootDistance, bestPort), self()))
                 .build();
     }
 
-    private void updateRootState(byte newRootID, byte newDistance) {
+    private int portOf(ActorRef port) {
+        for (int i = 0; i < ports.length; i++) {
+            if (ports[i].equals(port)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void updateRootState(int newRootID, int newDistance, int port) {
         rootID = newRootID;
         rootDistance = newDistance;
+        bestPort = port;
         IamRoot = false;
+        stats.rootChanges.increment();
+        stats.lastChangeNanos.accumulateAndGet(System.nanoTime(), Math::max);
     }
 
     private void propagateInformation() {
-        log.info("Propagating information with RootID: {}, RootDistance: {}", rootID, rootDistance);
-        pController1.tell(new PortController.SetBadPort(), self());
-        pController2.tell(new PortController.SetBadPort(), self());
-        pController3.tell(new PortController.SetBadPort(), self());
+        if (log.isInfoEnabled()) {
+            log.info("{}: Propagating information with RootID: {}, RootDistance: {}", name, rootID, rootDistance);
+        }
+        for (int i = 0; i < ports.length; i++) {
+            ports[i].tell(i == bestPort ? PortController.SetBestPort.INSTANCE : PortController.SetBadPort.INSTANCE,
+                    self());
+        }
 
         sendLanMessages(rootDistance, rootID);
     }
 
-    private void sendLanMessages(byte distance, byte believedRootID) {
-        pController1.tell(new PortController.SendLan(myID, distance, believedRootID), self());
-        pController2.tell(new PortController.SendLan(myID, distance, believedRootID), self());
-        pController3.tell(new PortController.SendLan(myID, distance, believedRootID), self());
+    private void sendLanMessages(int distance, int believedRootID) {
+        Bpdu bpdu = new Bpdu(myID, distance, believedRootID);
+        for (ActorRef port : ports) {
+            port.tell(bpdu, self());
+        }
     }
 }
 
-// PortController Actor
+// PortController Actor. Remembers the best information heard on its LAN; a Bpdu from the
+// bridge goes out on the LAN if it beats that, a Bpdu from the LAN goes up to the bridge.
 class PortController extends AbstractActor {
-    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+    private static final Logger log = EventLog.logger(PortController.class);
+    private final String name = getSelf().path().name();
 
     private ActorRef rootController;
     private ActorRef bridgeToLan;
 
-    private byte rootID = (byte) 255;
-    private byte rootDistance = (byte) 255;
+    private int rootID = Integer.MAX_VALUE;
+    private int rootDistance = Integer.MAX_VALUE;
     private boolean isTheBestPort;
 
     public PortController(ActorRef rootController, ActorRef bridgeToLan) {
@@ -116,29 +161,15 @@ class PortController extends AbstractActor {
         this.bridgeToLan = bridgeToLan;
     }
 
-    static class SetBestPort {}
-    static class SetBadPort {}
-    static class SendLan {
-        public final byte senderID;
-        public final byte distance;
-        public final byte believedRootID;
-
-        public SendLan(byte senderID, byte distance, byte believedRootID) {
-            this.senderID = senderID;
-            this.distance = distance;
-            this.believedRootID = believedRootID;
-        }
+    static Props props(ActorRef rootController, ActorRef bridgeToLan) {
+        return Props.create(PortController.class, () -> new PortController(rootController, bridgeToLan));
     }
-    static class SendBridge {
-        public final byte senderID;
-        public final byte distance;
-        public final byte believedRootID;
 
-        public SendBridge(byte senderID, byte distance, byte believedRootID) {
-            this.senderID = senderID;
-            this.distance = distance;
-            this.believedRootID = believedRootID;
-        }
+    static class SetBestPort {
+        static final SetBestPort INSTANCE = new SetBestPort();
+    }
+    static class SetBadPort {
+        static final SetBadPort INSTANCE = new SetBadPort();
     }
 
     @Override
@@ -146,66 +177,92 @@ class PortController extends AbstractActor {
         return receiveBuilder()
                 .match(SetBestPort.class, msg -> {
                     isTheBestPort = true;
-                    log.info("Port set as best port.");
+                    if (log.isInfoEnabled()) {
+                        log.info("{}: Port set as best port.", name);
+                    }
                 })
                 .match(SetBadPort.class, msg -> {
                     isTheBestPort = false;
-                    log.info("Port set as bad port.");
+                    if (log.isInfoEnabled()) {
+                        log.info("{}: Port set as bad port.", name);
+                    }
                 })
-                .match(SendLan.class, msg -> {
+                .match(Bpdu.class, msg -> getSender().equals(rootController), msg -> {
                     if (msg.believedRootID < rootID || (msg.believedRootID == rootID && msg.distance < rootDistance)) {
-                        bridgeToLan.tell(new BridgeToLanPort.TurnOn(), self());
-                        bridgeToLan.tell(new BridgeToLanPort.Send(msg.senderID, msg.distance, msg.believedRootID), self());
+                        bridgeToLan.tell(msg, self());
                     } else if (!isTheBestPort) {
-                        bridgeToLan.tell(new BridgeToLanPort.TurnOff(), self());
+                        bridgeToLan.tell(BridgeToLanPort.TurnOff.INSTANCE, self());
                     }
                 })
-                .match(SendBridge.class, msg -> {
+                .match(Bpdu.class, msg -> {
                     if (msg.believedRootID < rootID || (msg.believedRootID == rootID && msg.distance < rootDistance)) {
                         rootID = msg.believedRootID;
-                        rootDistance = (byte) (msg.distance + 1);
+                        rootDistance = msg.distance + 1;
                     }
-                    rootController.tell(new RootController.RecvInf(msg.senderID, msg.distance, msg.believedRootID), self());
+                    rootController.tell(msg, self());
                 })
                 .build();
     }
 }
 
-// BridgeToLanPort Actor
+// BridgeToLanPort Actor. A Bpdu from its PortController turns the port on and goes onto the
+// LAN; a Bpdu from the LAN goes to the PortController, on or off: a blocked port still listens.
 class BridgeToLanPort extends AbstractActor {
-    private final LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+    private static final Logger log = EventLog.logger(BridgeToLanPort.class);
+    private final String name = getSelf().path().name();
 
+    private final ActorRef lan;
+    private ActorRef portController;
     private boolean alive = true;
 
-    static class TurnOn {}
-    static class TurnOff {}
-    static class Send {
-        public final byte senderID;
-        public final byte distance;
-        public final byte believedRootID;
-
-        public Send(byte senderID, byte distance, byte believedRootID) {
-            this.senderID = senderID;
-            this.distance = distance;
-            this.believedRootID = believedRootID;
+    // lan may be null for a port with nothing attached
+    public BridgeToLanPort(ActorRef lan) {
+        this.lan = lan;
+    }
+
+    static Props props(ActorRef lan) {
+        return Props.create(BridgeToLanPort.class, () -> new BridgeToLanPort(lan));
+    }
+
+    static class Connect {
+        public final ActorRef portController;
+
+        public Connect(ActorRef portController) {
+            this.portController = portController;
         }
     }
+    static class TurnOff {
+        static final TurnOff INSTANCE = new TurnOff();
+    }
 
     @Override
     public Receive createReceive() {
         return receiveBuilder()
-                .match(TurnOn.class, msg -> {
-                    alive = true;
-                    log.info("BridgeToLanPort turned ON.");
-                })
+                .match(Connect.class, msg -> portController = msg.portController)
                 .match(TurnOff.class, msg -> {
                     alive = false;
-                    log.info("BridgeToLanPort turned OFF.");
+                    if (log.isInfoEnabled()) {
+                        log.info("{}: BridgeToLanPort turned OFF.", name);
+                    }
                 })
-                .match(Send.class, msg -> {
-                    if (alive) {
-                        log.info("Message sent to LAN: senderID={}, distance={}, believedRootID={}",
-                                msg.senderID, msg.distance, msg.believedRootID);
+                .match(Bpdu.class, msg -> getSender().equals(portController), msg -> {
+                    if (!alive) {
+                        alive = true;
+                        if (log.isInfoEnabled()) {
+                            log.info("{}: BridgeToLanPort turned ON.", name);
+                        }
+                    }
+                    if (log.isInfoEnabled()) {
+                        log.info("{}: Message sent to LAN: senderID={}, distance={}, believedRootID={}",
+                                name, msg.senderID, msg.distance, msg.believedRootID);
+                    }
+                    if (lan != null) {
+                        lan.tell(msg, self());
+                    }
+                })
+                .match(Bpdu.class, msg -> {
+                    if (portController != null) {
+                        portController.tell(msg, self());
                     }
                 })
                 .build();
@@ -214,19 +271,159 @@ class BridgeToLanPort extends AbstractActor {
 
 // Main Application
 public class RootControllerApp {
-    public static void main(String[] args) {
-        ActorSystem system = ActorSystem.create("NetworkSystem");
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    // Usage: RootControllerApp                             (one bridge, three unattached ports, event log on)
+    //        RootControllerApp <topology file> [helloMs]   (edge list, see Topology)
+    //        RootControllerApp random [bridges] [lans] [extraPorts] [seed] [helloMs]
+    //        RootControllerApp generate <file> [bridges] [lans] [extraPorts] [seed]
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            ActorSystem system = ActorSystem.create("NetworkSystem");
+            NetworkStats stats = new NetworkStats();
+            ActorRef rootController = system.actorOf(RootController.props(1, Duration.ofMillis(10), stats),
+                    "rootController");
+            ActorRef[] ports = new ActorRef[3];
+            for (int i = 0; i < ports.length; i++) {
+                ActorRef bridgeToLan = system.actorOf(BridgeToLanPort.props(null), "bridgeToLan" + (i + 1));
+                ports[i] = system.actorOf(PortController.props(rootController, bridgeToLan), "pController" + (i + 1));
+                bridgeToLan.tell(new BridgeToLanPort.Connect(ports[i]), ActorRef.noSender());
+            }
+            rootController.tell(new RootController.Ports(ports), ActorRef.noSender());
+            rootController.tell(new RootController.Initial(), ActorRef.noSender());
+            return;
+        }
+        if (args[0].equals("generate")) {
+            randomTopology(args, 2).save(Paths.get(args[1]));
+            return;
+        }
+        Topology topology;
+        int helloArg;
+        if (args[0].equals("random")) {
+            topology = randomTopology(args, 1);
+            helloArg = 5;
+        } else {
+            topology = Topology.load(Paths.get(args[0]));
+            helloArg = 1;
+        }
+        Duration hello = Duration.ofMillis(args.length > helloArg ? Long.parseLong(args[helloArg]) : 10);
+        EventLog.setEnabled("SpaningTree", false);
+        run(topology, hello);
+    }
 
-        ActorRef bridgeToLan1 = system.actorOf(Props.create(BridgeToLanPort.class), "bridgeToLan1");
-        ActorRef bridgeToLan2 = system.actorOf(Props.create(BridgeToLanPort.class), "bridgeToLan2");
-        ActorRef bridgeToLan3 = system.actorOf(Props.create(BridgeToLanPort.class), "bridgeToLan3");
+    private static Topology randomTopology(String[] args, int from) {
+        int bridges = args.length > from ? Integer.parseInt(args[from]) : 10_000;
+        int lans = args.length > from + 1 ? Integer.parseInt(args[from + 1]) : bridges / 2;
+        int extraPorts = args.length > from + 2 ? Integer.parseInt(args[from + 2]) : 2;
+        long seed = args.length > from + 3 ? Long.parseLong(args[from + 3]) : 42;
+        return Topology.random(bridges, lans, extraPorts, seed);
+    }
 
-        ActorRef pController1 = system.actorOf(Props.create(PortController.class, null, bridgeToLan1), "pController1");
-        ActorRef pController2 = system.actorOf(Props.create(PortController.class, null, bridgeToLan2), "pController2");
-        ActorRef pController3 = system.actorOf(Props.create(PortController.class, null, bridgeToLan3), "pController3");
+    static ActorRef[] lans(ActorSystem system, Topology topology, NetworkStats stats) {
+        ActorRef[] lans = new ActorRef[topology.lanCount];
+        for (int lan = 0; lan < lans.length; lan++) {
+            lans[lan] = system.actorOf(Lan.props(stats), "lan" + lan);
+        }
+        return lans;
+    }
 
-        ActorRef rootController = system.actorOf(Props.create(RootController.class, pController1, pController2, pController3), "rootController");
+    // Creates the bridges of a topology and wires them into its LANs. Everything is attached and
+    // connected from this thread before any bridge is started, so no frame can beat its wiring.
+    static ActorRef[] bridges(ActorSystem system, Topology topology, ActorRef[] lans, Duration hello,
+                              NetworkStats stats) {
+        ActorRef[] bridges = new ActorRef[topology.bridges()];
+        for (int bridge = 0; bridge < bridges.length; bridge++) {
+            int id = topology.bridgeIds[bridge];
+            bridges[bridge] = system.actorOf(RootController.props(id, hello, stats), "bridge" + id);
+            int[] attachedTo = topology.ports[bridge];
+            ActorRef[] ports = new ActorRef[attachedTo.length];
+            for (int port = 0; port < ports.length; port++) {
+                ActorRef lan = lans[attachedTo[port]];
+                ActorRef bridgeToLan = system.actorOf(BridgeToLanPort.props(lan), "bridgeToLan" + id + "-" + port);
+                ports[port] = system.actorOf(PortController.props(bridges[bridge], bridgeToLan),
+                        "pController" + id + "-" + port);
+                bridgeToLan.tell(new BridgeToLanPort.Connect(ports[port]), ActorRef.noSender());
+                lan.tell(new Lan.Attach(bridgeToLan), ActorRef.noSender());
+            }
+            bridges[bridge].tell(new RootController.Ports(ports), ActorRef.noSender());
+        }
+        return bridges;
+    }
 
-        rootController.tell(new RootController.Initial((byte) 1), ActorRef.noSender());
+    // Starts every bridge at once and waits until no BPDU has crossed a LAN for a while. The
+    // convergence time is that of the last root or distance change anywhere; the result is then
+    // checked against the shortest distances to the lowest-id bridge.
+    private static void run(Topology topology, Duration hello) throws Exception {
+        ActorSystem system = ActorSystem.create("NetworkSystem",
+                ConfigFactory.parseString("akka.scheduler.tick-duration = 1ms").withFallback(ConfigFactory.load()));
+        try {
+            NetworkStats stats = new NetworkStats();
+            long buildStart = System.nanoTime();
+            ActorRef[] lans = lans(system, topology, stats);
+            ActorRef[] bridges = bridges(system, topology, lans, hello, stats);
+            long start = System.nanoTime();
+            System.out.printf("%,d bridges, %,d LANs, %,d ports, hello %dms; wired in %.0fms%n", bridges.length,
+                    topology.lanCount, topology.portCount(), hello.toMillis(), (start - buildStart) / 1e6);
+
+            stats.lastChangeNanos.set(start);
+            for (ActorRef bridge : bridges) {
+                bridge.tell(new RootController.Initial(), ActorRef.noSender());
+            }
+            long quietNanos = Math.max(Duration.ofMillis(250).toNanos(), 20 * hello.toNanos());
+            long seen = -1;
+            long lastFrameNanos = System.nanoTime();
+            while (System.nanoTime() - lastFrameNanos < quietNanos) {
+                if (System.nanoTime() - start > TIMEOUT.toNanos()) {
+                    throw new IllegalStateException("no quiescence after " + TIMEOUT.getSeconds() + "s");
+                }
+                Thread.sleep(5);
+                long bpdus = stats.bpdus.sum();
+                if (bpdus != seen) {
+                    seen = bpdus;
+                    lastFrameNanos = System.nanoTime();
+                }
+            }
+            System.out.printf("converged in %.1fms (last root change), quiet after %.1fms%n",
+                    (stats.lastChangeNanos.get() - start) / 1e6, (lastFrameNanos - start) / 1e6);
+            long deliveries = 0;
+            Lan.LanStats busiest = null;
+            for (ActorRef lan : lans) {
+                Lan.LanStats segment = (Lan.LanStats) Patterns.ask(lan, new Lan.GetLanStats(), TIMEOUT)
+                        .toCompletableFuture().get();
+                deliveries += segment.deliveries;
+                if (busiest == null || segment.deliveries > busiest.deliveries) {
+                    busiest = segment;
+                }
+            }
+            System.out.printf("%,d BPDUs on LANs, %,d delivered to ports, %,d root changes%n",
+                    stats.bpdus.sum(), deliveries, stats.rootChanges.sum());
+            if (busiest != null) {
+                System.out.printf("busiest LAN: %,d ports, %,d BPDUs, %,d deliveries%n",
+                        busiest.attached, busiest.broadcasts, busiest.deliveries);
+            }
+
+            int[] expected = topology.expectedDistances();
+            int rootId = topology.rootId();
+            CompletableFuture<?>[] states = new CompletableFuture<?>[bridges.length];
+            for (int i = 0; i < bridges.length; i++) {
+                states[i] = Patterns.ask(bridges[i], new RootController.GetState(), TIMEOUT).toCompletableFuture();
+            }
+            int agreeing = 0;
+            int unreachable = 0;
+            for (int i = 0; i < bridges.length; i++) {
+                RootController.State state = (RootController.State) states[i].get();
+                if (expected[i] < 0) {
+                    unreachable++;
+                } else if (state.rootID == rootId && state.rootDistance == expected[i]) {
+                    agreeing++;
+                }
+            }
+            System.out.printf("%,d of %,d bridges agree on root %d at the shortest distance%s%n", agreeing,
+                    bridges.length - unreachable, rootId,
+                    unreachable > 0 ? String.format(" (%,d not connected to it)", unreachable) : "");
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
     }
 }
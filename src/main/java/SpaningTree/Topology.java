@@ -0,0 +1,190 @@
+package SpaningTree;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Bridges and LAN segments as plain arrays. The file format is an edge list, one port per line:
+// "<bridge id> <lan>" attaches a port of that bridge to that LAN; bridge ids are integers and
+// double as spanning-tree priorities (lowest becomes root), LANs are any token. '#' starts a comment.
+final class Topology {
+    final int[] bridgeIds;      // by bridge index
+    final int[][] ports;        // ports[bridge][port] = LAN index
+    final int lanCount;
+
+    Topology(int[] bridgeIds, int[][] ports, int lanCount) {
+        this.bridgeIds = bridgeIds;
+        this.ports = ports;
+        this.lanCount = lanCount;
+    }
+
+    int bridges() {
+        return bridgeIds.length;
+    }
+
+    int portCount() {
+        int count = 0;
+        for (int[] bridgePorts : ports) {
+            count += bridgePorts.length;
+        }
+        return count;
+    }
+
+    static Topology load(Path path) throws IOException {
+        Map<Integer, Integer> bridgeIndex = new HashMap<>();
+        Map<String, Integer> lanIndex = new HashMap<>();
+        int[] ids = new int[16];
+        int[][] ports = new int[16][];
+        int[] portCounts = new int[16];
+        try (BufferedReader in = Files.newBufferedReader(path)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                String[] fields = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+");
+                if (fields.length == 1 && fields[0].isEmpty()) {
+                    continue;
+                }
+                if (fields.length != 2) {
+                    throw new IllegalArgumentException(path + ":" + lineNumber + ": expected \"<bridge id> <lan>\"");
+                }
+                int id = Integer.parseInt(fields[0]);
+                Integer bridge = bridgeIndex.get(id);
+                if (bridge == null) {
+                    bridge = bridgeIndex.size();
+                    bridgeIndex.put(id, bridge);
+                    if (bridge == ids.length) {
+                        ids = Arrays.copyOf(ids, bridge * 2);
+                        ports = Arrays.copyOf(ports, bridge * 2);
+                        portCounts = Arrays.copyOf(portCounts, bridge * 2);
+                    }
+                    ids[bridge] = id;
+                    ports[bridge] = new int[2];
+                }
+                Integer lan = lanIndex.get(fields[1]);
+                if (lan == null) {
+                    lan = lanIndex.size();
+                    lanIndex.put(fields[1], lan);
+                }
+                if (portCounts[bridge] == ports[bridge].length) {
+                    ports[bridge] = Arrays.copyOf(ports[bridge], portCounts[bridge] * 2);
+                }
+                ports[bridge][portCounts[bridge]++] = lan;
+            }
+        }
+        int bridges = bridgeIndex.size();
+        int[][] trimmed = new int[bridges][];
+        for (int i = 0; i < bridges; i++) {
+            trimmed[i] = Arrays.copyOf(ports[i], portCounts[i]);
+        }
+        return new Topology(Arrays.copyOf(ids, bridges), trimmed, lanIndex.size());
+    }
+
+    void save(Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path)) {
+            out.write("# bridge lan\n");
+            for (int bridge = 0; bridge < bridgeIds.length; bridge++) {
+                for (int lan : ports[bridge]) {
+                    out.write(bridgeIds[bridge] + " lan" + lan + "\n");
+                }
+            }
+        }
+    }
+
+    // A connected random network: every bridge after the first has a port on a LAN an earlier
+    // bridge reaches, plus one to `extraPorts` more on random LANs, which closes loops for
+    // the protocol to break. Bridge ids are a shuffle of 1..bridges, so the root lands anywhere.
+    static Topology random(int bridges, int lans, int extraPorts, long seed) {
+        if (bridges < 1 || lans < 1 || extraPorts < 0) {
+            throw new IllegalArgumentException("need at least one bridge and one LAN");
+        }
+        Random random = new Random(seed);
+        int[] ids = new int[bridges];
+        for (int i = 0; i < bridges; i++) {
+            ids[i] = i + 1;
+        }
+        for (int i = bridges - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = ids[i];
+            ids[i] = ids[j];
+            ids[j] = swap;
+        }
+        // LANs reached so far are [0, reached); a new bridge may open the next one
+        int reached = 1;
+        int[][] ports = new int[bridges][];
+        for (int bridge = 0; bridge < bridges; bridge++) {
+            int count = 1 + (extraPorts == 0 ? 0 : 1 + random.nextInt(extraPorts));
+            ports[bridge] = new int[count];
+            ports[bridge][0] = random.nextInt(reached);
+            for (int port = 1; port < count; port++) {
+                int lan = reached < lans && random.nextBoolean() ? reached++ : random.nextInt(reached);
+                ports[bridge][port] = lan;
+            }
+        }
+        return new Topology(ids, ports, reached);
+    }
+
+    // Hops from the lowest-id bridge, through shared LANs, that a converged tree must report
+    int[] expectedDistances() {
+        int[][] members = lanMembers();
+        int[] distance = new int[bridgeIds.length];
+        Arrays.fill(distance, -1);
+        int root = 0;
+        for (int bridge = 1; bridge < bridgeIds.length; bridge++) {
+            if (bridgeIds[bridge] < bridgeIds[root]) {
+                root = bridge;
+            }
+        }
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        distance[root] = 0;
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            int bridge = queue.poll();
+            for (int lan : ports[bridge]) {
+                for (int neighbour : members[lan]) {
+                    if (distance[neighbour] < 0) {
+                        distance[neighbour] = distance[bridge] + 1;
+                        queue.add(neighbour);
+                    }
+                }
+            }
+        }
+        return distance;
+    }
+
+    int rootId() {
+        int root = Integer.MAX_VALUE;
+        for (int id : bridgeIds) {
+            root = Math.min(root, id);
+        }
+        return root;
+    }
+
+    private int[][] lanMembers() {
+        int[] counts = new int[lanCount];
+        for (int[] bridgePorts : ports) {
+            for (int lan : bridgePorts) {
+                counts[lan]++;
+            }
+        }
+        int[][] members = new int[lanCount][];
+        for (int lan = 0; lan < lanCount; lan++) {
+            members[lan] = new int[counts[lan]];
+            counts[lan] = 0;
+        }
+        for (int bridge = 0; bridge < ports.length; bridge++) {
+            for (int lan : ports[bridge]) {
+                members[lan][counts[lan]++] = bridge;
+            }
+        }
+        return members;
+    }
+}
@@ -1,9 +1,18 @@
 package TrainController;
 
+import Common.EventLog;
 import akka.actor.AbstractActor;
+import akka.actor.AbstractActorWithTimers;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
+import akka.pattern.Patterns;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 // BridgeController Actor
 class BridgeController extends AbstractActor {
@@ -75,76 +84,139 @@ class BridgeController extends AbstractActor {
 }
 
 // Train Actor
-class Train extends AbstractActor {
+class Train extends AbstractActorWithTimers {
+    private static final Logger log = EventLog.logger(Train.class);
 
+    private final String name = getSelf().path().name();
     boolean onTheBridge;
     private final ActorRef controller;
+    private final int id;
+    private final int priority;
+    private final Duration crossingTime;
+    private final Duration tripTime;
 
     public Train(ActorRef controller) {
+        this(controller, -1, 0, Duration.ZERO, Duration.ZERO);
+    }
+
+    // crossingTime: time on the bridge; tripTime: time away before arriving again
+    public Train(ActorRef controller, int id, int priority, Duration crossingTime, Duration tripTime) {
         this.controller = controller;
         this.onTheBridge = false;
+        this.id = id;
+        this.priority = priority;
+        this.crossingTime = crossingTime;
+        this.tripTime = tripTime;
     }
 
     static Props props(ActorRef controller) {
         return Props.create(Train.class, () -> new Train(controller));
     }
 
+    static Props props(ActorRef controller, int id, int priority, Duration crossingTime, Duration tripTime) {
+        return Props.create(Train.class, () -> new Train(controller, id, priority, crossingTime, tripTime));
+    }
+
     @Override
     public Receive createReceive() {
         return receiveBuilder()
                 .match(Messages.YouMayPass.class, msg -> {
                     onTheBridge = true;
-                    System.out.println(getSelf().path().name() + " is passing the bridge.");
-                    self().tell(new Messages.Passed(), getSelf());
+                    if (log.isInfoEnabled()) {
+                        log.info("{} is passing the bridge.", name);
+                    }
+                    after(crossingTime, Messages.Passed.INSTANCE);
                 })
                 .match(Messages.Passed.class, msg -> {
                     onTheBridge = false;
-                    controller.tell(new Messages.Leave(), getSelf());
-                    System.out.println(getSelf().path().name() + " has left the bridge.");
-                    self().tell(new Messages.ReachBridge(), getSelf());
+                    controller.tell(new Messages.Leave(id), getSelf());
+                    if (log.isInfoEnabled()) {
+                        log.info("{} has left the bridge.", name);
+                    }
+                    after(tripTime, Messages.ReachBridge.INSTANCE);
                 })
                 .match(Messages.ReachBridge.class, msg -> {
-                    controller.tell(new Messages.Arrive(), getSelf());
+                    controller.tell(new Messages.Arrive(id, priority), getSelf());
                 })
                 .build();
     }
-}
 
-// Messages
-class Messages {
-    static class Arrive {}
-    static class Leave {}
-    static class YouMayPass {}
-    static class Passed {}
-    static class ReachBridge {}
-    static class RegisterTrain {
-        final ActorRef train1;
-        final ActorRef train2;
-
-        RegisterTrain(ActorRef train1, ActorRef train2) {
-            this.train1 = train1;
-            this.train2 = train2;
+    private void after(Duration delay, Object msg) {
+        if (delay.isZero()) {
+            self().tell(msg, getSelf());
+        } else {
+            getTimers().startSingleTimer("next", msg, delay);
         }
     }
 }
 
 // Main Class
 public class BridgeControlSystem {
-    public static void main(String[] args) {
+    // Usage: BridgeControlSystem                  (two trains, one bridge, as in Rebeca)
+    //        BridgeControlSystem <trains> <lanes> [seconds] [fifo|priority] [crossingMs] [tripMs] [levels]
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            runScenario(Integer.parseInt(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 1,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 10,
+                    MultiLaneBridgeController.Policy.valueOf((args.length > 3 ? args[3] : "fifo").toUpperCase()),
+                    Duration.ofMillis(args.length > 4 ? Long.parseLong(args[4]) : 1),
+                    Duration.ofMillis(args.length > 5 ? Long.parseLong(args[5]) : 100),
+                    args.length > 6 ? Integer.parseInt(args[6]) : 4);
+            return;
+        }
         ActorSystem system = ActorSystem.create("BridgeControlSystem");
 
-//        // Create Train actors and pass the controller
-//        ActorRef train1 = system.actorOf(Train.props(bridgeController), "train1");
-//        ActorRef train2 = system.actorOf(Train.props(bridgeController), "train2");
-//
-//        // Create BridgeController actor
-//        ActorRef bridgeController = system.actorOf(BridgeController.props(train1, train2), "bridgeController");
-//
-//        // Register trains with the BridgeController
-//        bridgeController.tell(new Messages.RegisterTrain(train1, train2), ActorRef.noSender());
-//
-//        // Start the trains
-//        train1.tell(new Messages.ReachBridge(), ActorRef.noSender());
-//        train2.tell(new Messages.ReachBridge(), ActorRef.noSender());
+        // The controller and the trains refer to each other, so the trains are registered afterwards
+        ActorRef bridgeController = system.actorOf(BridgeController.props(null, null), "bridgeController");
+
+        // Create Train actors and pass the controller
+        ActorRef train1 = system.actorOf(Train.props(bridgeController), "train1");
+        ActorRef train2 = system.actorOf(Train.props(bridgeController), "train2");
+
+        // Register trains with the BridgeController
+        bridgeController.tell(new Messages.RegisterTrain(train1, train2), ActorRef.noSender());
+
+        // Start the trains
+        train1.tell(new Messages.ReachBridge(), ActorRef.noSender());
+        train2.tell(new Messages.ReachBridge(), ActorRef.noSender());
+    }
+
+    private static void runScenario(int n, int lanes, int seconds, MultiLaneBridgeController.Policy policy,
+                                    Duration crossingTime, Duration tripTime, int levels) throws Exception {
+        EventLog.setEnabled("TrainController", false);
+        // Crossing times are a few milliseconds; the 10ms default tick would round them all up
+        ActorSystem system = ActorSystem.create("BridgeControlSystem",
+                ConfigFactory.parseString("akka.scheduler.tick-duration = 1ms").withFallback(ConfigFactory.load()));
+        try {
+            ActorRef controller = system.actorOf(MultiLaneBridgeController.props(lanes, policy, levels), "bridgeController");
+            ActorRef[] trains = new ActorRef[n];
+            for (int i = 0; i < n; i++) {
+                trains[i] = system.actorOf(Train.props(controller, i, i % levels, crossingTime, tripTime),
+                        "train" + i);
+            }
+            controller.tell(new Messages.RegisterTrains(trains), ActorRef.noSender());
+            for (ActorRef train : trains) {
+                train.tell(Messages.ReachBridge.INSTANCE, ActorRef.noSender());
+            }
+
+            Thread.sleep(seconds * 1000L);
+            Messages.BridgeStats stats = (Messages.BridgeStats) Patterns.ask(controller, new Messages.GetBridgeStats(),
+                    Duration.ofSeconds(10)).toCompletableFuture().get();
+            long[] waits = stats.maxWaitNanos.clone();
+            Arrays.sort(waits);
+            long[] crossed = stats.crossingsPerTrain.clone();
+            Arrays.sort(crossed);
+            double elapsed = stats.elapsedNanos / 1e9;
+            System.out.printf("%d trains, %d lanes, %s, crossing %dms, trip %dms, %ds%n", n, lanes,
+                    policy.name().toLowerCase(), crossingTime.toMillis(), tripTime.toMillis(), seconds);
+            System.out.printf("crossings/s=%,.0f  utilization=%.1f%%%n", stats.crossings / elapsed,
+                    100 * stats.utilization());
+            System.out.printf("max wait per train: min=%.1fms median=%.1fms max=%.1fms%n",
+                    waits[0] / 1e6, waits[n / 2] / 1e6, waits[n - 1] / 1e6);
+            System.out.printf("crossings per train: min=%d median=%d max=%d%n", crossed[0], crossed[n / 2], crossed[n - 1]);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        }
     }
 }
@@ -0,0 +1,81 @@
+package TrainController;
+
+import akka.actor.ActorRef;
+
+// Messages
+class Messages {
+    static class Arrive {
+        final int trainId;
+        final int priority;
+
+        Arrive() {
+            this(-1, 0);
+        }
+
+        // priority: 0 is served first (MultiLaneBridgeController with Policy.PRIORITY)
+        Arrive(int trainId, int priority) {
+            this.trainId = trainId;
+            this.priority = priority;
+        }
+    }
+    static class Leave {
+        final int trainId;
+
+        Leave() {
+            this(-1);
+        }
+
+        Leave(int trainId) {
+            this.trainId = trainId;
+        }
+    }
+    static class YouMayPass {
+        static final YouMayPass INSTANCE = new YouMayPass();
+    }
+    static class Passed {
+        static final Passed INSTANCE = new Passed();
+    }
+    static class ReachBridge {
+        static final ReachBridge INSTANCE = new ReachBridge();
+    }
+    static class RegisterTrain {
+        final ActorRef train1;
+        final ActorRef train2;
+
+        RegisterTrain(ActorRef train1, ActorRef train2) {
+            this.train1 = train1;
+            this.train2 = train2;
+        }
+    }
+    // Train i must send Arrive/Leave with trainId i
+    static class RegisterTrains {
+        final ActorRef[] trains;
+
+        RegisterTrains(ActorRef[] trains) {
+            this.trains = trains;
+        }
+    }
+    static class GetBridgeStats {}
+    static class BridgeStats {
+        final int lanes;
+        final long crossings;
+        final long busyLaneNanos;
+        final long elapsedNanos;
+        final long[] maxWaitNanos;
+        final long[] crossingsPerTrain;
+
+        BridgeStats(int lanes, long crossings, long busyLaneNanos, long elapsedNanos,
+                    long[] maxWaitNanos, long[] crossingsPerTrain) {
+            this.lanes = lanes;
+            this.crossings = crossings;
+            this.busyLaneNanos = busyLaneNanos;
+            this.elapsedNanos = elapsedNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.crossingsPerTrain = crossingsPerTrain;
+        }
+
+        double utilization() {
+            return (double) busyLaneNanos / ((double) lanes * elapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package TrainController;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+
+// Bridge with any number of trains and `lanes` trains on it at once. Waiting trains queue by
+// id in one FIFO per priority level (a single level for Policy.FIFO); a bitmask of non-empty
+// levels makes picking the next train on Leave O(1).
+class MultiLaneBridgeController extends AbstractActor {
+    enum Policy { FIFO, PRIORITY }
+
+    static final int MAX_PRIORITY_LEVELS = 64;
+
+    private final int lanes;
+    private final Policy policy;
+    private final int levels;
+    private ActorRef[] trains = new ActorRef[0];
+    private int freeLanes;
+    private TrainQueue[] waiting = new TrainQueue[0];
+    private long nonEmptyLevels;       // bit i: waiting[i] has trains, level 0 served first
+
+    // Metrics
+    private long startNanos;
+    private long lastChangeNanos;
+    private long busyLaneNanos;
+    private long crossings;
+    private long[] arrivedAt = new long[0];
+    private long[] maxWait = new long[0];
+    private long[] crossingsPerTrain = new long[0];
+
+    public MultiLaneBridgeController(int lanes, Policy policy, int levels) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("lanes must be at least 1");
+        }
+        if (levels < 1 || levels > MAX_PRIORITY_LEVELS) {
+            throw new IllegalArgumentException("levels must be in [1, " + MAX_PRIORITY_LEVELS + "]");
+        }
+        this.lanes = lanes;
+        this.policy = policy;
+        this.levels = policy == Policy.FIFO ? 1 : levels;
+        this.freeLanes = lanes;
+    }
+
+    static Props props(int lanes, Policy policy, int levels) {
+        return Props.create(MultiLaneBridgeController.class, () -> new MultiLaneBridgeController(lanes, policy, levels));
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Messages.RegisterTrains.class, this::handleRegisterTrains)
+                .match(Messages.Arrive.class, this::handleArrive)
+                .match(Messages.Leave.class, this::handleLeave)
+                .match(Messages.GetBridgeStats.class, msg -> handleGetStats())
+                .build();
+    }
+
+    private void handleRegisterTrains(Messages.RegisterTrains msg) {
+        trains = msg.trains;
+        int n = trains.length;
+        waiting = new TrainQueue[levels];
+        for (int i = 0; i < levels; i++) {
+            waiting[i] = new TrainQueue(n);
+        }
+        arrivedAt = new long[n];
+        maxWait = new long[n];
+        crossingsPerTrain = new long[n];
+        startNanos = lastChangeNanos = System.nanoTime();
+    }
+
+    private void handleArrive(Messages.Arrive msg) {
+        long now = System.nanoTime();
+        if (freeLanes > 0) {
+            accountBusy(now);
+            freeLanes--;
+            grant(msg.trainId);
+        } else {
+            int level = policy == Policy.FIFO ? 0 : Math.min(Math.max(msg.priority, 0), levels - 1);
+            arrivedAt[msg.trainId] = now;
+            waiting[level].add(msg.trainId);
+            nonEmptyLevels |= 1L << level;
+        }
+    }
+
+    // The leaving train's lane goes straight to the next waiting train, if any
+    private void handleLeave(Messages.Leave msg) {
+        crossings++;
+        crossingsPerTrain[msg.trainId]++;
+        long now = System.nanoTime();
+        if (nonEmptyLevels == 0) {
+            accountBusy(now);
+            freeLanes++;
+            return;
+        }
+        int level = Long.numberOfTrailingZeros(nonEmptyLevels);
+        int next = waiting[level].poll();
+        if (waiting[level].isEmpty()) {
+            nonEmptyLevels &= ~(1L << level);
+        }
+        maxWait[next] = Math.max(maxWait[next], now - arrivedAt[next]);
+        grant(next);
+    }
+
+    private void grant(int trainId) {
+        trains[trainId].tell(Messages.YouMayPass.INSTANCE, getSelf());
+    }
+
+    private void accountBusy(long now) {
+        busyLaneNanos += (long) (lanes - freeLanes) * (now - lastChangeNanos);
+        lastChangeNanos = now;
+    }
+
+    private void handleGetStats() {
+        long now = System.nanoTime();
+        accountBusy(now);
+        // Trains still queued count with their wait so far, or starvation would go unreported
+        long[] waits = maxWait.clone();
+        for (TrainQueue queue : waiting) {
+            for (int i = 0; i < queue.size(); i++) {
+                int trainId = queue.get(i);
+                waits[trainId] = Math.max(waits[trainId], now - arrivedAt[trainId]);
+            }
+        }
+        getSender().tell(new Messages.BridgeStats(lanes, crossings, busyLaneNanos, now - startNanos,
+                waits, crossingsPerTrain.clone()), getSelf());
+    }
+}
@@ -0,0 +1,38 @@
+package TrainController;
+
+// Fixed-capacity ring of train ids; a train waits at most once, so capacity = number of trains
+class TrainQueue {
+    private final int[] ids;
+    private int head;
+    private int size;
+
+    TrainQueue(int capacity) {
+        ids = new int[Math.max(1, capacity)];
+    }
+
+    void add(int trainId) {
+        int tail = head + size < ids.length ? head + size : head + size - ids.length;
+        ids[tail] = trainId;
+        size++;
+    }
+
+    int poll() {
+        int trainId = ids[head];
+        head = head + 1 < ids.length ? head + 1 : 0;
+        size--;
+        return trainId;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // i-th waiting train, 0 being the head
+    int get(int i) {
+        return ids[head + i < ids.length ? head + i : head + i - ids.length];
+    }
+}